@@ -6,9 +6,14 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.xml.xpath.XPathExpressionException;
+import ninja.egg82.services.CacheMaintainer;
+import ninja.egg82.utils.AsyncUtil;
 import ninja.egg82.utils.DownloadUtil;
 import ninja.egg82.utils.HTTPUtil;
 import ninja.egg82.utils.InjectUtil;
@@ -16,7 +21,8 @@ import ninja.egg82.utils.MavenUtil;
 import org.xml.sax.SAXException;
 
 public class Artifact {
-    private static ConcurrentMap<String, Artifact> cache = new ConcurrentHashMap<>();
+    private static ConcurrentMap<CacheKey, Artifact> cache = new ConcurrentHashMap<>();
+    private static ConcurrentMap<RepositorySetKey, Set<Repository>> repositorySets = new ConcurrentHashMap<>();
 
     private final String groupId;
     public String getGroupId() { return groupId; }
@@ -28,13 +34,13 @@ public class Artifact {
     public Scope getScope() { return scope; }
 
     private String version;
-    public String getVersion() { return version; }
+    public String getVersion() { ensureVersion(); return version; }
 
     private String strippedVersion;
-    public String getStrippedVersion() { return strippedVersion; }
+    public String getStrippedVersion() { ensureVersion(); return strippedVersion; }
 
     private String realVersion;
-    public String getRealVersion() { return realVersion; }
+    public String getRealVersion() { ensureVersion(); return realVersion; }
 
     private final boolean snapshot;
     public boolean isSnapshot() { return snapshot; }
@@ -45,61 +51,261 @@ public class Artifact {
     private final boolean latest;
     public boolean isLatest() { return latest; }
 
+    private final boolean range;
+    public boolean isRange() { return range; }
+
+    private String classifier = null;
+    public String getClassifier() { return classifier; }
+
+    private String type = "jar";
+    public String getType() { return type; }
+
+    private Set<Exclusion> exclusions = Collections.emptySet();
+    public Set<Exclusion> getExclusions() { return Collections.unmodifiableSet(exclusions); }
+
     private Map<String, String> properties = null;
-    public Map<String, String> getProperties() { return Collections.unmodifiableMap(properties); }
+    public Map<String, String> getProperties() { ensureResolved(); return Collections.unmodifiableMap(properties); }
 
+    // Shared between every artifact built with the same repositories, see internRepositories
     private Set<Repository> repositories = new LinkedHashSet<>();
     public Set<Repository> getRepositories() { return Collections.unmodifiableSet(repositories); }
 
-    private Set<Repository> declaredRepositories = new LinkedHashSet<>();
-    public Set<Repository> getDeclaredRepositories() { return Collections.unmodifiableSet(declaredRepositories); }
+    private Set<Repository> declaredRepositories = Collections.emptySet();
+    public Set<Repository> getDeclaredRepositories() { ensureResolved(); return Collections.unmodifiableSet(declaredRepositories); }
+
+    private UpdatePolicy updatePolicy = null;
+    public UpdatePolicy getUpdatePolicy() { return updatePolicy; }
 
-    private Set<String> rawDirectJarURIs = new LinkedHashSet<>();
+    private Set<String> rawDirectJarURIs = Collections.emptySet();
     public Set<String> getRawDirectJarURIs() { return Collections.unmodifiableSet(rawDirectJarURIs); }
 
-    private Set<URI> directJarURIs = new LinkedHashSet<>();
-    public Set<URI> getDirectJarURIs() { return Collections.unmodifiableSet(directJarURIs); }
+    // Candidate URIs are rebuilt on request instead of held for every proxy and repository
+    public Set<URI> getDirectJarURIs() { return getURIs(true, false); }
 
-    private Set<URI> jarURIs = new LinkedHashSet<>();
-    public Set<URI> getJarURIs() { return Collections.unmodifiableSet(jarURIs); }
+    public Set<URI> getJarURIs() { return getURIs(true, true); }
 
-    private Set<URI> pomURIs = new LinkedHashSet<>();
-    public Set<URI> getPomURIs() { return Collections.unmodifiableSet(pomURIs); }
+    public Set<URI> getPomURIs() { return getURIs(false, true); }
 
     private ArtifactParent parent = null;
-    public ArtifactParent getParent() { return parent; }
+    public ArtifactParent getParent() { ensureResolved(); return parent; }
+
+    private boolean lazy = false;
+    public boolean isLazy() { return lazy; }
+
+    // Set for scoped views, which resolve through the shared core
+    private final Artifact core;
+    private CacheKey cacheKey = null;
+
+    // Not a monitor, so virtual threads waiting on a resolution don't pin their carriers
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean versionResolved = false;
+    private volatile boolean resolved = false;
 
     private volatile List<Artifact> dependencies = null;
+    // Scope-filtered lists keyed by exclusions and scopes. Shared with views, so each exclusion set is built once
+    private final ConcurrentMap<List<Object>, List<Artifact>> filteredDependencies;
+    // Set on a core whose POM couldn't be found, so views use its empty list instead of looking for the POM
+    private boolean pomMissing = false;
     public List<Artifact> getDependencies() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (core != null && exclusions.equals(core.exclusions)) {
+            return core.getDependencies();
+        }
+
         List<Artifact> tmp = dependencies;
         if (tmp == null) {
-            synchronized (this) {
+            resolve();
+            ResolutionContext.lock(lock);
+            try {
                 tmp = dependencies;
                 if (tmp == null) {
                     dependencies = tmp = MavenUtil.getDependencies(this);
                 }
+            } finally {
+                lock.unlock();
             }
         }
         return tmp;
     }
 
+    /**
+     * Gets the direct dependencies declared with one of the given scopes.
+     * Dependencies in other scopes are never built, so nothing is fetched for them.
+     *
+     * @param scopes The scopes to keep
+     * @return The matching dependencies
+     */
+    public List<Artifact> getDependencies(Set<Scope> scopes) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (scopes == null) {
+            throw new IllegalArgumentException("scopes cannot be null.");
+        }
+
+        return getDependencies(scopes, lazy);
+    }
+
+    private List<Artifact> getDependencies(Set<Scope> scopes, boolean lazy) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        List<Artifact> tmp = getCachedDependencies();
+        if (tmp == null) {
+            resolve();
+            tmp = getCachedDependencies(); // Artifacts that are gone get an empty list while resolving
+            if (tmp == null) {
+                return getFilteredDependencies(scopes, lazy);
+            }
+        }
+
+        List<Artifact> retVal = new ArrayList<>();
+        for (Artifact dependency : tmp) {
+            if (scopes.contains(dependency.scope)) {
+                retVal.add(dependency);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Walks the dependency tree breadth-first, applying Maven's scope propagation
+     * ({@link Scope#propagate(Scope)}) and keeping only dependencies whose effective
+     * scope is in the given set. Subtrees that can't reach a wanted scope are never
+     * built. When the same groupId:artifactId (and classifier) shows up more than once,
+     * the nearest one wins.
+     *
+     * @param scopes The effective scopes to keep, e.g. compile and runtime
+     * @return The dependencies in breadth-first order
+     */
+    public List<Artifact> getTransitiveDependencies(Set<Scope> scopes) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (scopes == null) {
+            throw new IllegalArgumentException("scopes cannot be null.");
+        }
+
+        Map<String, Artifact> retVal = new LinkedHashMap<>();
+        Deque<Artifact> queue = new ArrayDeque<>();
+        Deque<Scope> queueScopes = new ArrayDeque<>();
+
+        for (Artifact dependency : getDependencies(scopes)) {
+            if (retVal.putIfAbsent(getConflictKey(dependency), dependency) == null) {
+                queue.add(dependency);
+                queueScopes.add(dependency.scope);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            Artifact current = queue.poll();
+            Scope currentScope = queueScopes.poll();
+
+            Set<Scope> declared = getDeclaredScopes(currentScope, scopes);
+            if (declared.isEmpty()) {
+                continue;
+            }
+
+            for (Artifact dependency : current.getDependencies(declared)) {
+                if (retVal.putIfAbsent(getConflictKey(dependency), dependency) == null) {
+                    queue.add(dependency);
+                    queueScopes.add(currentScope.propagate(dependency.scope));
+                }
+            }
+        }
+
+        return new ArrayList<>(retVal.values());
+    }
+
+    public CompletableFuture<List<Artifact>> getDependenciesAsync(Executor executor) { return AsyncUtil.supplyAsync(this::getDependencies, executor); }
+
+    /**
+     * Asynchronous {@link #getTransitiveDependencies(Set)}. Every dependency is resolved in
+     * its own task on the executor, and its children are scheduled as soon as its POM is
+     * parsed. The result is then assembled from the resolved graph, so it has the same
+     * order and nearest-wins choices as the blocking version.
+     *
+     * @param scopes The effective scopes to keep, e.g. compile and runtime
+     * @param executor The executor to resolve on
+     * @return A future completed with the dependencies in breadth-first order
+     */
+    public CompletableFuture<List<Artifact>> getTransitiveDependenciesAsync(Set<Scope> scopes, Executor executor) {
+        if (scopes == null) {
+            throw new IllegalArgumentException("scopes cannot be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        Set<String> scheduled = ConcurrentHashMap.newKeySet();
+        return prefetch(this, null, scopes, scheduled, executor).thenCompose(v -> AsyncUtil.supplyAsync(() -> getTransitiveDependencies(scopes), executor));
+    }
+
+    private static CompletableFuture<Void> prefetch(Artifact artifact, Scope effectiveScope, Set<Scope> scopes, Set<String> scheduled, Executor executor) {
+        return AsyncUtil.supplyAsync(() -> {
+            artifact.resolve();
+            Set<Scope> declared = effectiveScope == null ? scopes : getDeclaredScopes(effectiveScope, scopes);
+            // Children are built lazily so each one resolves in its own task
+            return declared.isEmpty() ? Collections.<Artifact>emptyList() : artifact.getDependencies(declared, true);
+        }, executor).thenCompose(children -> {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Artifact child : children) {
+                Scope childScope = effectiveScope == null ? child.scope : effectiveScope.propagate(child.scope);
+                // Each future is owned by exactly one parent, so cycles can't wait on themselves
+                if (scheduled.add(child.toString() + "|" + childScope.getName())) {
+                    futures.add(prefetch(child, childScope, scopes, scheduled, executor));
+                }
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        });
+    }
+
+    private static Set<Scope> getDeclaredScopes(Scope effectiveScope, Set<Scope> scopes) {
+        Set<Scope> retVal = EnumSet.noneOf(Scope.class);
+        for (Scope s : Scope.values()) {
+            Scope effective = effectiveScope.propagate(s);
+            if (effective != null && scopes.contains(effective)) {
+                retVal.add(s);
+            }
+        }
+        return retVal;
+    }
+
+    private List<Artifact> getFilteredDependencies(Set<Scope> scopes, boolean lazy) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        List<Object> key = Arrays.asList(exclusions, scopes.isEmpty() ? EnumSet.noneOf(Scope.class) : EnumSet.copyOf(scopes));
+        List<Artifact> retVal = filteredDependencies.get(key);
+        if (retVal == null) {
+            retVal = MavenUtil.getDependencies(this, scopes, lazy);
+            List<Artifact> cached = filteredDependencies.putIfAbsent(key, retVal);
+            if (cached == null) {
+                return new ArrayList<>(retVal);
+            }
+            retVal = cached;
+        }
+
+        if (!lazy) {
+            // The cached list may have been built lazily, e.g. by prefetch
+            for (Artifact dependency : retVal) {
+                dependency.resolve();
+            }
+        }
+        return new ArrayList<>(retVal);
+    }
+
+    private List<Artifact> getCachedDependencies() { return core != null && exclusions.equals(core.exclusions) ? core.dependencies : dependencies; }
+
+    private static String getConflictKey(Artifact artifact) { return artifact.groupId + ":" + artifact.artifactId + (artifact.classifier != null ? ":" + artifact.classifier : ""); }
+
     private final File cacheDir;
     public File getCacheDir() { return cacheDir; }
 
     private final int computedHash;
 
     private Artifact(String groupId, String artifactId, String version, File cacheDir, Scope scope) {
-        this.groupId = groupId;
-        this.artifactId = artifactId;
+        this.groupId = groupId.intern(); // Shared by every artifact in the same group
+        this.artifactId = artifactId.intern();
         this.scope = scope;
         this.version = version;
         this.cacheDir = cacheDir;
+        this.core = null;
+        this.filteredDependencies = new ConcurrentHashMap<>();
 
         computedHash = Objects.hash(groupId, artifactId, version);
 
         snapshot = version.endsWith("-SNAPSHOT") || version.endsWith("-LATEST");
         release = version.equalsIgnoreCase("release");
         latest = version.equalsIgnoreCase("latest");
+        range = VersionRange.isRange(version);
 
         if (snapshot) {
             strippedVersion = version.substring(0, version.lastIndexOf('-'));
@@ -110,6 +316,30 @@ public class Artifact {
         realVersion = strippedVersion;
     }
 
+    private Artifact(Artifact core, Artifact request) {
+        this.groupId = core.groupId;
+        this.artifactId = core.artifactId;
+        this.scope = request.scope;
+        this.version = core.version;
+        this.cacheDir = core.cacheDir;
+        this.core = core;
+        this.filteredDependencies = core.filteredDependencies;
+        this.computedHash = core.computedHash;
+        this.snapshot = core.snapshot;
+        this.release = core.release;
+        this.latest = core.latest;
+        this.range = core.range;
+        this.strippedVersion = core.strippedVersion;
+        this.realVersion = core.realVersion;
+        this.classifier = core.classifier;
+        this.type = core.type;
+        this.exclusions = request.exclusions;
+        this.lazy = request.lazy;
+        this.repositories = core.repositories;
+        this.updatePolicy = core.updatePolicy;
+        this.rawDirectJarURIs = core.rawDirectJarURIs;
+    }
+
     public static Builder builder(String groupId, String artifactId, String version, File cacheDir) throws IOException { return new Builder(groupId, artifactId, version, cacheDir, Scope.COMPILE); }
 
     public static Builder builder(String groupId, String artifactId, String version, File cacheDir, Scope scope) throws IOException { return new Builder(groupId, artifactId, version, cacheDir, scope); }
@@ -148,11 +378,82 @@ public class Artifact {
             return this;
         }
 
+        public Builder updatePolicy(UpdatePolicy updatePolicy) {
+            if (updatePolicy == null) {
+                throw new IllegalArgumentException("updatePolicy cannot be null.");
+            }
+
+            result.updatePolicy = updatePolicy;
+            return this;
+        }
+
+        /**
+         * Defers version resolution, the POM download and parent/repository discovery
+         * until a getter that needs them is first called. Dependencies of a lazy artifact
+         * are built lazily as well. Failures then surface from those getters as an
+         * {@link IllegalStateException}, or from the methods that declare them.
+         *
+         * @param lazy true to defer resolution
+         * @return This builder
+         */
+        public Builder lazy(boolean lazy) {
+            result.lazy = lazy;
+            return this;
+        }
+
+        public Builder classifier(String classifier) {
+            result.classifier = classifier == null || classifier.isEmpty() ? null : classifier;
+            return this;
+        }
+
+        public Builder type(String type) {
+            if (type == null || type.isEmpty()) {
+                throw new IllegalArgumentException("type cannot be null or empty.");
+            }
+
+            // Same as Maven's test-jar handler
+            if (type.equals("test-jar")) {
+                result.type = "jar";
+                if (result.classifier == null) {
+                    result.classifier = "tests";
+                }
+            } else {
+                result.type = type;
+            }
+            return this;
+        }
+
+        public Builder addExclusion(Exclusion exclusion) {
+            if (exclusion == null) {
+                throw new IllegalArgumentException("exclusion cannot be null.");
+            }
+
+            if (result.exclusions.isEmpty()) {
+                result.exclusions = new LinkedHashSet<>();
+            }
+            result.exclusions.add(exclusion);
+            return this;
+        }
+
+        public Builder addExclusions(Collection<Exclusion> exclusions) {
+            if (exclusions == null) {
+                throw new IllegalArgumentException("exclusions cannot be null.");
+            }
+
+            for (Exclusion exclusion : exclusions) {
+                addExclusion(exclusion);
+            }
+            return this;
+        }
+
         public Builder addDirectJarURL(String url) {
             if (url == null || url.isEmpty()) {
                 throw new IllegalArgumentException("url cannot be null or empty.");
             }
 
+            if (result.rawDirectJarURIs.isEmpty()) {
+                result.rawDirectJarURIs = new LinkedHashSet<>();
+            }
             result.rawDirectJarURIs.add(url);
             return this;
         }
@@ -163,13 +464,23 @@ public class Artifact {
 
         public String getVersion() { return result.version; }
 
+        public Scope getScope() { return result.scope; }
+
+        public CompletableFuture<Artifact> buildAsync(Executor executor) { return AsyncUtil.supplyAsync(this::build, executor); }
+
         public Artifact build() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-            Artifact cachedResult = cache.putIfAbsent(result.toString(), result);
-            if (result.equals(cachedResult)) {
-                return result.scope == cachedResult.scope && result.cacheDir.equals(cachedResult.cacheDir) ? cachedResult : result.copyArtifact(result);
+            // Moving versions (ranges, release, latest) change during build, so hold on to the key
+            CacheKey key = new CacheKey(result);
+            result.cacheKey = key;
+            Artifact cachedResult = cache.putIfAbsent(key, result);
+            Artifact core = cachedResult != null ? cachedResult : result; // Same key, even once a moving version resolves
+
+            // Scope and exclusions don't change what gets resolved, so other scopes are views over the same core
+            Artifact retVal = result.scope == core.scope && result.exclusions.equals(core.exclusions) ? core : new Artifact(core, result);
+            if (!result.lazy) {
+                retVal.resolve();
             }
-
-            return result.build();
+            return retVal;
         }
     }
 
@@ -177,23 +488,41 @@ public class Artifact {
         if (output == null) {
             throw new IllegalArgumentException("output cannot be null.");
         }
-        HTTPUtil.downloadFile(HTTPUtil.toURLs(jarURIs), output);
+        if (HTTPUtil.isOffline()) {
+            throw new MissingArtifactException(toString());
+        }
+        HTTPUtil.downloadFile(HTTPUtil.toURLs(getJarURIs()), output);
+        CacheMaintainer.recordAccess(output);
     }
 
     public void downloadPom(File output) throws IOException {
         if (output == null) {
             throw new IllegalArgumentException("output cannot be null.");
         }
-        HTTPUtil.downloadFile(HTTPUtil.toURLs(pomURIs), output);
+        if (HTTPUtil.isOffline()) {
+            throw new MissingArtifactException(toString());
+        }
+        HTTPUtil.downloadFile(HTTPUtil.toURLs(getPomURIs()), output);
+        CacheMaintainer.recordAccess(output);
     }
 
     public boolean fileExists(File output) { return DownloadUtil.hasFile(output); }
 
     public void injectJar(File output, URLClassLoader classLoader) throws IOException, IllegalAccessException, InvocationTargetException {
-        InjectUtil.injectFile(DownloadUtil.getOrDownloadFile(output, HTTPUtil.toURLs(jarURIs)), classLoader);
+        if (HTTPUtil.isOffline() && !fileExists(output)) {
+            throw new MissingArtifactException(toString());
+        }
+        InjectUtil.injectFile(DownloadUtil.getOrDownloadFile(output, HTTPUtil.toURLs(getJarURIs())), classLoader);
+    }
+
+    public CompletableFuture<Void> injectJarAsync(File output, URLClassLoader classLoader, Executor executor) {
+        return AsyncUtil.supplyAsync(() -> {
+            injectJar(output, classLoader);
+            return null;
+        }, executor);
     }
 
-    public String toString() { return groupId + ":" + artifactId + ":" + version; }
+    public String toString() { return groupId + ":" + artifactId + ":" + version + (classifier != null ? ":" + classifier : ""); }
 
     @Override
     public boolean equals(Object o) {
@@ -202,13 +531,120 @@ public class Artifact {
         Artifact artifact = (Artifact) o;
         return groupId.equals(artifact.groupId) &&
                 artifactId.equals(artifact.artifactId) &&
-                version.equals(artifact.version);
+                version.equals(artifact.version) &&
+                Objects.equals(classifier, artifact.classifier);
     }
 
     @Override
     public int hashCode() { return computedHash; }
 
-    private Artifact build() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+    private void ensureVersion() {
+        // Getters called by this artifact's own resolution see the fields as they are
+        if (!versionResolved && !lock.isHeldByCurrentThread()) {
+            try {
+                resolveVersion();
+            } catch (URISyntaxException | IOException | XPathExpressionException | SAXException ex) {
+                throw new IllegalStateException("Could not resolve the version of " + this + ".", ex);
+            }
+        }
+    }
+
+    private void ensureResolved() {
+        if (!resolved && !lock.isHeldByCurrentThread()) {
+            try {
+                resolve();
+            } catch (URISyntaxException | IOException | XPathExpressionException | SAXException ex) {
+                throw new IllegalStateException("Could not resolve " + this + ".", ex);
+            }
+        }
+    }
+
+    // Other threads that hit the cache wait on these until the first one finishes
+    private void resolveVersion() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (versionResolved) {
+            return;
+        }
+
+        ResolutionContext.lock(lock);
+        try {
+            if (versionResolved) {
+                return;
+            }
+
+            try {
+                if (core != null) {
+                    core.resolveVersion();
+                    version = core.version;
+                    strippedVersion = core.strippedVersion;
+                    realVersion = core.realVersion;
+                    repositories = core.repositories;
+                } else {
+                    buildVersion();
+                }
+            } catch (URISyntaxException | IOException | XPathExpressionException | SAXException | RuntimeException ex) {
+                evict();
+                throw ex;
+            }
+            versionResolved = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resolve() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (resolved) {
+            return;
+        }
+
+        ResolutionContext.lock(lock);
+        try {
+            if (resolved) {
+                return;
+            }
+
+            resolveVersion();
+            try {
+                if (core != null) {
+                    core.resolve();
+                    if (core.pomMissing) {
+                        dependencies = core.dependencies;
+                    }
+                    parent = core.parent;
+                    declaredRepositories = core.declaredRepositories;
+                    if (core.properties.containsKey("project.scope")) {
+                        properties = new HashMap<>(core.properties);
+                        properties.put("project.scope", scope.getName());
+                        properties.put("pom.scope", scope.getName());
+                    } else {
+                        properties = core.properties;
+                    }
+                } else {
+                    buildPom();
+                }
+            } catch (URISyntaxException | IOException | XPathExpressionException | SAXException | RuntimeException ex) {
+                evict();
+                throw ex;
+            }
+            resolved = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict() {
+        // Don't leave a half-built artifact around for the next caller
+        if (cacheKey != null) {
+            cache.remove(cacheKey, this);
+        }
+    }
+
+    private void buildVersion() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (range) {
+            String v = MavenUtil.getRangeVersion(this);
+            version = v;
+            strippedVersion = v;
+            realVersion = v;
+        }
         if (snapshot) {
             String v;
             try {
@@ -230,31 +666,26 @@ public class Artifact {
             realVersion = v;
         }
 
-        for (String url : rawDirectJarURIs) {
-            directJarURIs.add(new URI(replaceURL(url)));
+        repositories = internRepositories(repositories);
+        createURIs(true, true); // Fail here rather than in a getter if a direct URL is malformed
+    }
 
-            String pomURL = url.replace(".jar", ".pom");
-            if (!pomURL.equals(url)) {
-                pomURIs.add(new URI(replaceURL(pomURL)));
+    private void buildPom() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (!MavenUtil.hasCachePom(this)) {
+            if (HTTPUtil.isOffline() && !MavenUtil.isMarkedGone(this)) {
+                throw new MissingArtifactException(toString());
             }
-        }
-        jarURIs.addAll(directJarURIs);
-
-        String group = groupId.replace('.', '/');
-        for (Repository repository : repositories) {
-            for (String proxy : repository.getProxies()) {
-                jarURIs.add(new URI(proxy + group + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion) + ".jar"));
-                pomURIs.add(new URI(proxy + group + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion) + ".pom"));
+            HTTPUtil.RemoteStatus status = HTTPUtil.getRemoteStatus(HTTPUtil.toURLs(getPomURIs()));
+            if (status != HTTPUtil.RemoteStatus.FOUND) {
+                // Some deps just don't exist any more. Wheee!
+                if (status == HTTPUtil.RemoteStatus.MISSING) {
+                    MavenUtil.markGone(this);
+                }
+                properties = new HashMap<>();
+                dependencies = new ArrayList<>();
+                pomMissing = true;
+                return;
             }
-            jarURIs.add(new URI(repository.getURL() + group + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion) + ".jar"));
-            pomURIs.add(new URI(repository.getURL() + group + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion) + ".pom"));
-        }
-
-        if (!MavenUtil.getCachePom(this).exists() && !HTTPUtil.remoteExists(HTTPUtil.toURLs(pomURIs))) {
-            // Some deps just don't exist any more. Wheee!
-            properties = new HashMap<>();
-            dependencies = new ArrayList<>();
-            return this;
         }
 
         properties = MavenUtil.getProperties(this);
@@ -267,9 +698,63 @@ public class Artifact {
         properties.put("pom.version", version);
         properties.put("pom.scope", scope.getName());
         parent = MavenUtil.getParent(this);
-        declaredRepositories.addAll(MavenUtil.getDeclaredRepositories(this));
+        declaredRepositories = internRepositories(MavenUtil.getDeclaredRepositories(this));
+    }
+
+    private Set<URI> getURIs(boolean jar, boolean includeRepositories) {
+        ensureVersion();
+        try {
+            return createURIs(jar, includeRepositories);
+        } catch (URISyntaxException | UnsupportedEncodingException ex) {
+            // Already validated in build()
+            throw new IllegalStateException("Could not create URIs for " + this + ".", ex);
+        }
+    }
+
+    private Set<URI> createURIs(boolean jar, boolean includeRepositories) throws URISyntaxException, UnsupportedEncodingException {
+        Set<URI> retVal = new LinkedHashSet<>();
+        for (String url : rawDirectJarURIs) {
+            String fileURL = jar ? url : url.replace(".jar", ".pom");
+            if (jar || !fileURL.equals(url)) {
+                retVal.add(new URI(replaceURL(fileURL)));
+            }
+        }
+        if (!includeRepositories) {
+            return Collections.unmodifiableSet(retVal);
+        }
 
-        return this;
+        String path = groupId.replace('.', '/') + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion)
+                + (jar ? (classifier != null ? "-" + encode(classifier) : "") + "." + getExtension() : ".pom");
+        for (Repository repository : repositories) {
+            for (String proxy : repository.getProxies()) {
+                retVal.add(new URI(proxy + path));
+            }
+            retVal.add(new URI(repository.getURL() + path));
+        }
+        return Collections.unmodifiableSet(retVal);
+    }
+
+    private static Set<Repository> internRepositories(Collection<Repository> repositories) {
+        if (repositories.isEmpty()) {
+            return Collections.emptySet();
+        }
+        RepositorySetKey key = new RepositorySetKey(repositories);
+        return repositorySets.computeIfAbsent(key, k -> Collections.unmodifiableSet(new LinkedHashSet<>(k.repositories)));
+    }
+
+    private String getExtension() {
+        // Packaging types that are still plain jars on disk
+        switch (type) {
+            case "bundle":
+            case "maven-plugin":
+            case "ejb":
+            case "ejb-client":
+            case "java-source":
+            case "javadoc":
+                return "jar";
+            default:
+                return type;
+        }
     }
 
     private String encode(String raw) throws UnsupportedEncodingException { return URLEncoder.encode(raw, "UTF-8"); }
@@ -285,19 +770,55 @@ public class Artifact {
                 .replace("{REAL}", realVersion);
     }
 
-    private Artifact copyArtifact(Artifact artifact) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        Artifact retVal = new Artifact(artifact.groupId, artifact.artifactId, artifact.version, artifact.cacheDir, artifact.scope);
-        retVal.strippedVersion = artifact.strippedVersion;
-        retVal.realVersion = artifact.realVersion;
-        retVal.properties = artifact.properties;
-        retVal.repositories = artifact.repositories;
-        retVal.declaredRepositories = artifact.declaredRepositories;
-        retVal.rawDirectJarURIs = artifact.rawDirectJarURIs;
-        retVal.directJarURIs = artifact.directJarURIs;
-        retVal.jarURIs = artifact.jarURIs;
-        retVal.pomURIs = artifact.pomURIs;
-        retVal.parent = artifact.parent;
-        retVal.dependencies = artifact.dependencies;
-        return retVal.build();
+    private static class RepositorySetKey {
+        // Lists so the probe order is part of the key. Repository equality ignores the update policy, so it's kept separately
+        private final List<Repository> repositories;
+        private final List<UpdatePolicy> updatePolicies;
+        private final int hash;
+
+        private RepositorySetKey(Collection<Repository> repositories) {
+            this.repositories = new ArrayList<>(repositories);
+            this.updatePolicies = new ArrayList<>(repositories.size());
+            for (Repository repository : repositories) {
+                updatePolicies.add(repository.getUpdatePolicy());
+            }
+            this.hash = Objects.hash(this.repositories, updatePolicies);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RepositorySetKey)) return false;
+            RepositorySetKey that = (RepositorySetKey) o;
+            return hash == that.hash && repositories.equals(that.repositories) && updatePolicies.equals(that.updatePolicies);
+        }
+
+        public int hashCode() { return hash; }
+    }
+
+    private static class CacheKey {
+        private final File cacheDir;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String classifier;
+        private final int hash;
+
+        private CacheKey(Artifact artifact) {
+            this.cacheDir = artifact.cacheDir;
+            this.groupId = artifact.groupId;
+            this.artifactId = artifact.artifactId;
+            this.version = artifact.version;
+            this.classifier = artifact.classifier;
+            this.hash = Objects.hash(cacheDir, groupId, artifactId, version, classifier);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) o;
+            return hash == that.hash && cacheDir.equals(that.cacheDir) && groupId.equals(that.groupId) && artifactId.equals(that.artifactId) && version.equals(that.version) && Objects.equals(classifier, that.classifier);
+        }
+
+        public int hashCode() { return hash; }
     }
 }
@@ -9,6 +9,7 @@ import java.net.URLEncoder;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.xml.xpath.XPathExpressionException;
 import ninja.egg82.utils.DownloadUtil;
 import ninja.egg82.utils.HTTPUtil;
@@ -57,15 +58,21 @@ public class ArtifactParent {
     private ArtifactParent parent = null;
     public ArtifactParent getParent() { return parent; }
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean resolved = false;
+
     private volatile List<Artifact> softDependencies = null;
     public List<Artifact> getSoftDependencies() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
         List<Artifact> tmp = softDependencies;
         if (tmp == null) {
-            synchronized (this) {
+            ResolutionContext.lock(lock);
+            try {
                 tmp = softDependencies;
                 if (tmp == null) {
                     softDependencies = tmp = MavenUtil.getSoftDependencies(this);
                 }
+            } finally {
+                lock.unlock();
             }
         }
         return tmp;
@@ -75,11 +82,14 @@ public class ArtifactParent {
     public List<Artifact> getHardDependencies() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
         List<Artifact> tmp = hardDependencies;
         if (tmp == null) {
-            synchronized (this) {
+            ResolutionContext.lock(lock);
+            try {
                 tmp = hardDependencies;
                 if (tmp == null) {
                     hardDependencies = tmp = MavenUtil.getHardDependencies(this);
                 }
+            } finally {
+                lock.unlock();
             }
         }
         return tmp;
@@ -149,12 +159,15 @@ public class ArtifactParent {
         public String getVersion() { return result.version; }
 
         public ArtifactParent build() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-            ArtifactParent cachedResult = cache.putIfAbsent(result.toString(), result);
+            String key = result.toString();
+            ArtifactParent cachedResult = cache.putIfAbsent(key, result);
             if (result.equals(cachedResult)) {
+                // Wait for whoever is building it, so we never hand out a half-built parent
+                cachedResult.resolve(key);
                 return result.cacheDir.equals(cachedResult.cacheDir) ? cachedResult : result.copyParent(result);
             }
 
-            return result.build();
+            return result.resolve(key);
         }
     }
 
@@ -162,6 +175,9 @@ public class ArtifactParent {
         if (output == null) {
             throw new IllegalArgumentException("output cannot be null.");
         }
+        if (HTTPUtil.isOffline()) {
+            throw new MissingArtifactException(toString());
+        }
         HTTPUtil.downloadFile(HTTPUtil.toURLs(pomURIs), output);
     }
 
@@ -182,6 +198,31 @@ public class ArtifactParent {
     @Override
     public int hashCode() { return computedHash; }
 
+    private ArtifactParent resolve(String key) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        if (resolved) {
+            return this;
+        }
+
+        ResolutionContext.lock(lock);
+        try {
+            if (!resolved) {
+                try {
+                    build();
+                } catch (URISyntaxException | IOException | XPathExpressionException | SAXException | RuntimeException ex) {
+                    // Don't leave a half-built parent around for the next caller
+                    if (key != null) {
+                        cache.remove(key, this);
+                    }
+                    throw ex;
+                }
+                resolved = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
     private ArtifactParent build() throws URISyntaxException, IOException, XPathExpressionException, SAXException {
         if (snapshot) {
             String v;
@@ -213,12 +254,21 @@ public class ArtifactParent {
             pomURIs.add(new URI(repository.getURL() + group + "/" + artifactId + "/" + encode(version) + "/" + artifactId + "-" + encode(realVersion) + ".pom"));
         }
 
-        if (!MavenUtil.getCachePom(this).exists() && !HTTPUtil.remoteExists(HTTPUtil.toURLs(pomURIs))) {
-            // Some deps just don't exist any more. Wheee!
-            properties = new HashMap<>();
-            softDependencies = new ArrayList<>();
-            hardDependencies = new ArrayList<>();
-            return this;
+        if (!MavenUtil.hasCachePom(this)) {
+            if (HTTPUtil.isOffline() && !MavenUtil.isMarkedGone(this)) {
+                throw new MissingArtifactException(toString());
+            }
+            HTTPUtil.RemoteStatus status = HTTPUtil.getRemoteStatus(HTTPUtil.toURLs(pomURIs));
+            if (status != HTTPUtil.RemoteStatus.FOUND) {
+                // Some deps just don't exist any more. Wheee!
+                if (status == HTTPUtil.RemoteStatus.MISSING) {
+                    MavenUtil.markGone(this);
+                }
+                properties = new HashMap<>();
+                softDependencies = new ArrayList<>();
+                hardDependencies = new ArrayList<>();
+                return this;
+            }
         }
 
         properties = MavenUtil.getProperties(this);
@@ -247,6 +297,6 @@ public class ArtifactParent {
         retVal.parent = parent.parent;
         retVal.softDependencies = parent.softDependencies;
         retVal.hardDependencies = parent.hardDependencies;
-        return retVal.build();
+        return retVal.resolve(null);
     }
 }
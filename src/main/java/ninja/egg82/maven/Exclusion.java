@@ -0,0 +1,41 @@
+package ninja.egg82.maven;
+
+import java.util.Objects;
+
+/**
+ * A dependency exclusion. Either part may be "*" to match anything.
+ */
+public class Exclusion {
+    private final String groupId;
+    public String getGroupId() { return groupId; }
+
+    private final String artifactId;
+    public String getArtifactId() { return artifactId; }
+
+    public Exclusion(String groupId, String artifactId) {
+        if (groupId == null || groupId.isEmpty()) {
+            throw new IllegalArgumentException("groupId cannot be null or empty.");
+        }
+        if (artifactId == null || artifactId.isEmpty()) {
+            throw new IllegalArgumentException("artifactId cannot be null or empty.");
+        }
+
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+    }
+
+    public boolean matches(String groupId, String artifactId) {
+        return (this.groupId.equals("*") || this.groupId.equals(groupId)) && (this.artifactId.equals("*") || this.artifactId.equals(artifactId));
+    }
+
+    public String toString() { return groupId + ":" + artifactId; }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Exclusion)) return false;
+        Exclusion that = (Exclusion) o;
+        return groupId.equals(that.groupId) && artifactId.equals(that.artifactId);
+    }
+
+    public int hashCode() { return Objects.hash(groupId, artifactId); }
+}
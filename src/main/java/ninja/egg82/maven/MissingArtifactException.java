@@ -0,0 +1,22 @@
+package ninja.egg82.maven;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Thrown when artifacts are needed but are not in the cache and cannot be fetched,
+ * for example while in offline mode.
+ */
+public class MissingArtifactException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> missing;
+    public List<String> getMissing() { return missing; }
+
+    public MissingArtifactException(String coordinates) { this(Collections.singletonList(coordinates)); }
+
+    public MissingArtifactException(Collection<String> missing) {
+        super("Missing from cache: " + String.join(", ", missing));
+        this.missing = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(missing)));
+    }
+}
@@ -0,0 +1,236 @@
+package ninja.egg82.maven;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The parts of a POM the resolver reads, extracted once from the XML and
+ * stored in a compact binary form so warm starts can skip XML parsing.
+ * Values are stored raw, before any placeholder interpolation.
+ */
+public class PomModel {
+    private static final int MAGIC = 0x4444504D; // DDPM
+    private static final int FORMAT_VERSION = 2;
+
+    private final Map<String, String> properties;
+    public Map<String, String> getProperties() { return Collections.unmodifiableMap(properties); }
+
+    private final Coordinates parent;
+    public Coordinates getParent() { return parent; }
+
+    private final List<Coordinates> dependencies;
+    public List<Coordinates> getDependencies() { return Collections.unmodifiableList(dependencies); }
+
+    private final List<Coordinates> managedDependencies;
+    public List<Coordinates> getManagedDependencies() { return Collections.unmodifiableList(managedDependencies); }
+
+    private final List<String> repositoryURLs;
+    public List<String> getRepositoryURLs() { return Collections.unmodifiableList(repositoryURLs); }
+
+    public PomModel(Map<String, String> properties, Coordinates parent, List<Coordinates> dependencies, List<Coordinates> managedDependencies, List<String> repositoryURLs) {
+        this.properties = properties;
+        this.parent = parent;
+        this.dependencies = dependencies;
+        this.managedDependencies = managedDependencies;
+        this.repositoryURLs = repositoryURLs;
+    }
+
+    public static class Coordinates {
+        private final String groupId;
+        public String getGroupId() { return groupId; }
+
+        private final String artifactId;
+        public String getArtifactId() { return artifactId; }
+
+        private final String version;
+        public String getVersion() { return version; }
+
+        private final String scope;
+        public String getScope() { return scope; }
+
+        private final String classifier;
+        public String getClassifier() { return classifier; }
+
+        private final String type;
+        public String getType() { return type; }
+
+        private final String optional;
+        public String getOptional() { return optional; }
+
+        private final List<Exclusion> exclusions;
+        public List<Exclusion> getExclusions() { return Collections.unmodifiableList(exclusions); }
+
+        public Coordinates(String groupId, String artifactId, String version, String scope) { this(groupId, artifactId, version, scope, null, null, null, Collections.emptyList()); }
+
+        public Coordinates(String groupId, String artifactId, String version, String scope, String classifier, String type, String optional, List<Exclusion> exclusions) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.scope = scope;
+            this.classifier = classifier;
+            this.type = type;
+            this.optional = optional;
+            this.exclusions = exclusions;
+        }
+
+        private void write(DataOutput out) throws IOException {
+            writeString(out, groupId);
+            writeString(out, artifactId);
+            writeString(out, version);
+            writeString(out, scope);
+            writeString(out, classifier);
+            writeString(out, type);
+            writeString(out, optional);
+            out.writeInt(exclusions.size());
+            for (Exclusion exclusion : exclusions) {
+                out.writeUTF(exclusion.getGroupId());
+                out.writeUTF(exclusion.getArtifactId());
+            }
+        }
+
+        private static Coordinates read(DataInput in) throws IOException {
+            String groupId = readString(in);
+            String artifactId = readString(in);
+            String version = readString(in);
+            String scope = readString(in);
+            String classifier = readString(in);
+            String type = readString(in);
+            String optional = readString(in);
+
+            int exclusionCount = in.readInt();
+            List<Exclusion> exclusions = new ArrayList<>(exclusionCount);
+            for (int i = 0; i < exclusionCount; i++) {
+                exclusions.add(new Exclusion(in.readUTF(), in.readUTF()));
+            }
+            return new Coordinates(groupId, artifactId, version, scope, classifier, type, optional, exclusions);
+        }
+    }
+
+    /**
+     * Reads a stored model, validating it against the POM it was extracted from.
+     *
+     * @param data The stored model
+     * @param pomSize The current size of the source POM
+     * @param pomModified The current modification time of the source POM
+     * @return The model, or null if the stored form is missing, stale, or from another format version
+     */
+    public static PomModel read(ByteBuffer data, long pomSize, long pomModified) {
+        if (data == null) {
+            return null;
+        }
+
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)), pomSize, pomModified);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    public static PomModel read(File file, long pomSize, long pomModified) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in, pomSize, pomModified);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    private static PomModel read(DataInputStream in, long pomSize, long pomModified) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != pomSize || in.readLong() != pomModified) {
+            return null;
+        }
+
+        int propertyCount = in.readInt();
+        Map<String, String> properties = new HashMap<>(Math.max(16, propertyCount * 2));
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+
+        Coordinates parent = in.readBoolean() ? Coordinates.read(in) : null;
+        List<Coordinates> dependencies = readCoordinates(in);
+        List<Coordinates> managedDependencies = readCoordinates(in);
+
+        int repositoryCount = in.readInt();
+        List<String> repositoryURLs = new ArrayList<>(repositoryCount);
+        for (int i = 0; i < repositoryCount; i++) {
+            repositoryURLs.add(readString(in));
+        }
+
+        return new PomModel(properties, parent, dependencies, managedDependencies, repositoryURLs);
+    }
+
+    public byte[] toBytes(long pomSize, long pomModified) throws IOException {
+        ByteArrayOutputStream retVal = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(retVal)) {
+            write(out, pomSize, pomModified);
+        }
+        return retVal.toByteArray();
+    }
+
+    public void write(File file, long pomSize, long pomModified) throws IOException {
+        byte[] data = toBytes(pomSize, pomModified);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void write(DataOutputStream out, long pomSize, long pomModified) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(pomSize);
+        out.writeLong(pomModified);
+
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> kvp : properties.entrySet()) {
+            out.writeUTF(kvp.getKey());
+            out.writeUTF(kvp.getValue());
+        }
+
+        out.writeBoolean(parent != null);
+        if (parent != null) {
+            parent.write(out);
+        }
+        writeCoordinates(out, dependencies);
+        writeCoordinates(out, managedDependencies);
+
+        out.writeInt(repositoryURLs.size());
+        for (String url : repositoryURLs) {
+            writeString(out, url);
+        }
+    }
+
+    private static List<Coordinates> readCoordinates(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<Coordinates> retVal = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            retVal.add(Coordinates.read(in));
+        }
+        return retVal;
+    }
+
+    private static void writeCoordinates(DataOutput out, List<Coordinates> coordinates) throws IOException {
+        out.writeInt(coordinates.size());
+        for (Coordinates c : coordinates) {
+            c.write(out);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException { return in.readBoolean() ? in.readUTF() : null; }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
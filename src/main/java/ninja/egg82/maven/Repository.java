@@ -9,6 +9,9 @@ public class Repository {
     private Set<String> proxies = new LinkedHashSet<>();
     public Set<String> getProxies() { return Collections.unmodifiableSet(proxies); }
 
+    private UpdatePolicy updatePolicy = null;
+    public UpdatePolicy getUpdatePolicy() { return updatePolicy; }
+
     private int hashCode = -1;
 
     private Repository(String url) { this.url = url; }
@@ -58,6 +61,15 @@ public class Repository {
             return this;
         }
 
+        public Builder updatePolicy(UpdatePolicy updatePolicy) {
+            if (updatePolicy == null) {
+                throw new IllegalArgumentException("updatePolicy cannot be null.");
+            }
+
+            result.updatePolicy = updatePolicy;
+            return this;
+        }
+
         public Repository build() {
             return result.build();
         }
@@ -0,0 +1,12 @@
+package ninja.egg82.maven;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a {@link ResolutionContext} is cancelled or runs past its deadline.
+ */
+public class ResolutionCancelledException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ResolutionCancelledException(String message) { super(message); }
+}
@@ -0,0 +1,147 @@
+package ninja.egg82.maven;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An overall deadline and a cancellation flag for a resolution.
+ *
+ * While a context is entered on a thread, every request made through HTTPUtil checks it
+ * first and caps its connect and read timeouts to the time left, so a slow network can't
+ * push resolution past the deadline by more than one read. Work submitted through
+ * AsyncUtil carries the submitting thread's context with it.
+ */
+public class ResolutionContext {
+    private static final ThreadLocal<ResolutionContext> current = new ThreadLocal<>();
+    private static final long LOCK_CHECK_MILLIS = 100L;
+
+    private long deadlineNanos = -1L;
+    public boolean hasDeadline() { return deadlineNanos != -1L; }
+
+    private volatile boolean cancelled = false;
+    public boolean isCancelled() { return cancelled; }
+
+    private ResolutionContext() { }
+
+    public static ResolutionContext current() { return current.get(); }
+
+    public static Builder builder() { return new Builder(); }
+
+    public static class Builder {
+        private final ResolutionContext result = new ResolutionContext();
+
+        private Builder() { }
+
+        public Builder deadline(long timeout, TimeUnit unit) {
+            if (timeout <= 0L) {
+                throw new IllegalArgumentException("timeout must be positive.");
+            }
+            if (unit == null) {
+                throw new IllegalArgumentException("unit cannot be null.");
+            }
+
+            // Never -1, which means no deadline
+            result.deadlineNanos = (System.nanoTime() + unit.toNanos(timeout)) | 1L;
+            return this;
+        }
+
+        public ResolutionContext build() { return result; }
+    }
+
+    /**
+     * Cancels the resolution. Requests already in flight finish or time out on their
+     * own; nothing new is started.
+     */
+    public void cancel() { cancelled = true; }
+
+    public boolean isExpired() { return hasDeadline() && System.nanoTime() - deadlineNanos >= 0L; }
+
+    public long getRemainingMillis() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public void check() throws ResolutionCancelledException {
+        if (cancelled) {
+            throw new ResolutionCancelledException("Resolution was cancelled.");
+        }
+        if (isExpired()) {
+            throw new ResolutionCancelledException("Resolution deadline exceeded.");
+        }
+    }
+
+    /**
+     * Makes this the current context on the calling thread until the handle is closed.
+     *
+     * @return A handle that restores the previous context when closed
+     */
+    public Handle enter() {
+        Handle retVal = new Handle(current.get());
+        current.set(this);
+        return retVal;
+    }
+
+    public static class Handle implements AutoCloseable {
+        private final ResolutionContext previous;
+
+        private Handle(ResolutionContext previous) { this.previous = previous; }
+
+        public void close() {
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    public static void checkCurrent() throws ResolutionCancelledException {
+        ResolutionContext context = current.get();
+        if (context != null) {
+            context.check();
+        }
+    }
+
+    /**
+     * Acquires a lock, giving up if the current context is cancelled or expires while waiting.
+     *
+     * @param lock The lock to acquire
+     * @throws ResolutionCancelledException If the current context is cancelled or expired
+     */
+    public static void lock(Lock lock) throws ResolutionCancelledException {
+        ResolutionContext context = current.get();
+        if (context == null) {
+            lock.lock();
+            return;
+        }
+
+        try {
+            context.check();
+            while (!lock.tryLock(Math.max(1L, Math.min(LOCK_CHECK_MILLIS, context.getRemainingMillis())), TimeUnit.MILLISECONDS)) {
+                context.check();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResolutionCancelledException("Resolution was interrupted.");
+        }
+    }
+
+    /**
+     * Gets the timeout to use for the next request on this thread.
+     *
+     * @param maxMillis The timeout to use without a deadline
+     * @return The smaller of maxMillis and the time left, never less than 1
+     * @throws ResolutionCancelledException If the current context is cancelled or expired
+     */
+    public static int getTimeout(int maxMillis) throws ResolutionCancelledException {
+        ResolutionContext context = current.get();
+        if (context == null) {
+            return maxMillis;
+        }
+
+        context.check();
+        return (int) Math.max(1L, Math.min(maxMillis, context.getRemainingMillis()));
+    }
+}
@@ -15,6 +15,30 @@ public enum Scope {
         this.name = name;
     }
 
+    /**
+     * Gets the scope a transitive dependency ends up in when reached through a dependency of this scope.
+     * Follows Maven's propagation table: only compile and runtime dependencies are transitive.
+     *
+     * @param dependency The scope the transitive dependency is declared with
+     * @return The effective scope, or null if the dependency is not transitive
+     */
+    public Scope propagate(Scope dependency) {
+        if (dependency != COMPILE && dependency != RUNTIME) {
+            return null;
+        }
+
+        switch (this) {
+            case COMPILE:
+                return dependency;
+            case PROVIDED:
+            case RUNTIME:
+            case TEST:
+                return this;
+            default:
+                return null;
+        }
+    }
+
     public static Scope fromName(String name) {
         if (name == null || name.isEmpty()) {
             return COMPILE;
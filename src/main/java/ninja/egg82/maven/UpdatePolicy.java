@@ -0,0 +1,89 @@
+package ninja.egg82.maven;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often moving versions (SNAPSHOT, RELEASE, LATEST) are re-checked against
+ * remote metadata. Mirrors Maven's updatePolicy values.
+ */
+public class UpdatePolicy {
+    private static final long DAILY_INTERVAL = -1L;
+
+    public static final UpdatePolicy ALWAYS = new UpdatePolicy("always", 0L);
+    public static final UpdatePolicy DAILY = new UpdatePolicy("daily", DAILY_INTERVAL);
+    public static final UpdatePolicy NEVER = new UpdatePolicy("never", Long.MAX_VALUE);
+
+    private final String name;
+    public String getName() { return name; }
+
+    private final long intervalMillis;
+
+    private UpdatePolicy(String name, long intervalMillis) {
+        this.name = name;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public static UpdatePolicy interval(long minutes) {
+        if (minutes <= 0L) {
+            throw new IllegalArgumentException("minutes must be positive.");
+        }
+        return new UpdatePolicy("interval:" + minutes, TimeUnit.MINUTES.toMillis(minutes));
+    }
+
+    public static UpdatePolicy fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DAILY;
+        }
+
+        name = name.trim();
+        if (name.equalsIgnoreCase(ALWAYS.name)) {
+            return ALWAYS;
+        }
+        if (name.equalsIgnoreCase(NEVER.name)) {
+            return NEVER;
+        }
+        if (name.regionMatches(true, 0, "interval:", 0, 9)) {
+            try {
+                return interval(Long.parseLong(name.substring(9).trim()));
+            } catch (IllegalArgumentException ignored) { } // Maven falls back to daily, so do we
+        }
+        return DAILY;
+    }
+
+    public boolean isAlways() { return intervalMillis == 0L; }
+
+    /**
+     * Returns whether metadata last updated at the given time should be re-fetched.
+     *
+     * @param lastUpdated The time the metadata was last updated, in epoch millis
+     * @param now The current time, in epoch millis
+     * @return true if the metadata is out of date under this policy
+     */
+    public boolean isStale(long lastUpdated, long now) {
+        if (intervalMillis == 0L) {
+            return true;
+        }
+        if (intervalMillis == Long.MAX_VALUE) {
+            return false;
+        }
+        if (intervalMillis == DAILY_INTERVAL) {
+            ZoneId zone = ZoneId.systemDefault();
+            return lastUpdated < Instant.ofEpochMilli(now).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return now - lastUpdated >= intervalMillis;
+    }
+
+    public String toString() { return name; }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UpdatePolicy)) return false;
+        UpdatePolicy that = (UpdatePolicy) o;
+        return intervalMillis == that.intervalMillis;
+    }
+
+    public int hashCode() { return Objects.hash(intervalMillis); }
+}
@@ -0,0 +1,180 @@
+package ninja.egg82.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A Maven version, tokenized once so comparisons don't re-parse or allocate.
+ * Ordering follows Maven's ComparableVersion: numbers compare numerically,
+ * "1.0" equals "1", and known qualifiers sort as
+ * alpha &lt; beta &lt; milestone &lt; rc &lt; snapshot &lt; (release) &lt; sp &lt; anything else.
+ * Zeros are also trimmed before a qualifier, so "1.0-alpha1" equals "1-alpha1".
+ * Otherwise, unlike Maven, '.' and '-' separators are treated the same.
+ */
+public class Version implements Comparable<Version> {
+    private static final String[] QUALIFIERS = { "alpha", "beta", "milestone", "rc", "snapshot", "", "sp" };
+    private static final int RELEASE_RANK = 5;
+    private static final int UNKNOWN_RANK = QUALIFIERS.length;
+
+    private final String version;
+
+    // Parallel arrays: a number token has rank -1 and its digits (without leading zeros) as value
+    private final int[] ranks;
+    private final String[] values;
+    private final int hash;
+
+    private Version(String version, int[] ranks, String[] values) {
+        this.version = version;
+        this.ranks = ranks;
+        this.values = values;
+        this.hash = 31 * Arrays.hashCode(ranks) + Arrays.hashCode(values);
+    }
+
+    public static Version parse(String version) {
+        if (version == null) {
+            throw new IllegalArgumentException("version cannot be null.");
+        }
+
+        List<String> tokens = new ArrayList<>();
+        List<Boolean> sublists = new ArrayList<>(); // Whether Maven would start a new sub-list at the token
+        String lower = version.trim().toLowerCase(Locale.ROOT);
+        int start = 0;
+        boolean sublist = false;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean end = i == lower.length();
+            char c = end ? '.' : lower.charAt(i);
+            if (c == '.' || c == '-' || c == '_') {
+                tokens.add(lower.substring(start, i));
+                sublists.add(sublist);
+                sublist = c == '-';
+                start = i + 1;
+            } else if (i > start && Character.isDigit(c) != Character.isDigit(lower.charAt(i - 1))) {
+                tokens.add(lower.substring(start, i));
+                sublists.add(sublist);
+                sublist = true;
+                start = i;
+            }
+        }
+
+        int[] ranks = new int[tokens.size()];
+        String[] values = new String[tokens.size()];
+        int length = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            boolean nextIsNumber = i + 1 < tokens.size() && !tokens.get(i + 1).isEmpty() && Character.isDigit(tokens.get(i + 1).charAt(0));
+            if (!token.isEmpty() && Character.isDigit(token.charAt(0))) {
+                ranks[length] = -1;
+                values[length] = stripZeros(token);
+            } else {
+                String qualifier = normalize(token, nextIsNumber);
+                if (sublists.get(i)) {
+                    // Zeros before a qualifier's sub-list don't count either, so "1.0.0-beta" == "1-beta"
+                    length = trimNulls(ranks, values, length);
+                }
+                ranks[length] = getRank(qualifier);
+                values[length] = ranks[length] == UNKNOWN_RANK ? qualifier : "";
+            }
+            length++;
+        }
+
+        // Trailing zeros and release qualifiers don't change the version, so "1.0.0" == "1"
+        length = trimNulls(ranks, values, length);
+        return new Version(version, Arrays.copyOf(ranks, length), Arrays.copyOf(values, length));
+    }
+
+    private static int trimNulls(int[] ranks, String[] values, int length) {
+        while (length > 0 && (ranks[length - 1] == RELEASE_RANK || (ranks[length - 1] == -1 && values[length - 1].isEmpty()))) {
+            length--;
+        }
+        return length;
+    }
+
+    public int compareTo(Version other) {
+        int length = Math.max(ranks.length, other.ranks.length);
+        for (int i = 0; i < length; i++) {
+            int c = compareToken(i < ranks.length ? ranks[i] : RELEASE_RANK, i < ranks.length ? values[i] : null, i < other.ranks.length ? other.ranks[i] : RELEASE_RANK, i < other.ranks.length ? other.values[i] : null);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareToken(int rank, String value, int otherRank, String otherValue) {
+        // A missing token is "0" against a number and a release against a qualifier
+        if (value == null) {
+            return otherRank == -1 ? (otherValue.isEmpty() ? 0 : -1) : Integer.compare(RELEASE_RANK, otherRank);
+        }
+        if (otherValue == null) {
+            return -compareToken(otherRank, otherValue, rank, value);
+        }
+
+        if (rank == -1 && otherRank == -1) {
+            return value.length() != otherValue.length() ? Integer.compare(value.length(), otherValue.length()) : value.compareTo(otherValue);
+        }
+        if (rank == -1 || otherRank == -1) {
+            return rank == -1 ? 1 : -1; // Numbers are newer than qualifiers
+        }
+        if (rank != otherRank) {
+            return Integer.compare(rank, otherRank);
+        }
+        return value.compareTo(otherValue);
+    }
+
+    public boolean isSnapshot() {
+        for (int rank : ranks) {
+            if (rank == 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString() { return version; }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Version)) return false;
+        Version that = (Version) o;
+        return hash == that.hash && Arrays.equals(ranks, that.ranks) && Arrays.equals(values, that.values);
+    }
+
+    public int hashCode() { return hash; }
+
+    private static String stripZeros(String digits) {
+        int i = 0;
+        while (i < digits.length() && digits.charAt(i) == '0') {
+            i++;
+        }
+        return digits.substring(i);
+    }
+
+    private static String normalize(String qualifier, boolean nextIsNumber) {
+        if (nextIsNumber && qualifier.length() == 1) {
+            switch (qualifier) {
+                case "a": return "alpha";
+                case "b": return "beta";
+                case "m": return "milestone";
+                default: return qualifier;
+            }
+        }
+        switch (qualifier) {
+            case "cr": return "rc";
+            case "ga":
+            case "final":
+            case "release": return "";
+            default: return qualifier;
+        }
+    }
+
+    private static int getRank(String qualifier) {
+        for (int i = 0; i < QUALIFIERS.length; i++) {
+            if (QUALIFIERS[i].equals(qualifier)) {
+                return i;
+            }
+        }
+        return UNKNOWN_RANK;
+    }
+}
@@ -0,0 +1,161 @@
+package ninja.egg82.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Maven version range such as "[1.2,2.0)", "(,1.0]", "[1.5]" or "[1,2),[3,4)".
+ */
+public class VersionRange {
+    private final String range;
+    private final List<Restriction> restrictions;
+
+    private VersionRange(String range, List<Restriction> restrictions) {
+        this.range = range;
+        this.restrictions = restrictions;
+    }
+
+    public static boolean isRange(String version) {
+        if (version == null) {
+            return false;
+        }
+        version = version.trim();
+        return version.startsWith("[") || version.startsWith("(");
+    }
+
+    public static VersionRange parse(String range) {
+        if (range == null) {
+            throw new IllegalArgumentException("range cannot be null.");
+        }
+
+        String process = range.replaceAll("\\s", "");
+        List<Restriction> restrictions = new ArrayList<>();
+        while (!process.isEmpty()) {
+            if (process.charAt(0) != '[' && process.charAt(0) != '(') {
+                throw new IllegalArgumentException("Invalid version range: " + range);
+            }
+
+            int end = indexOfClose(process);
+            if (end == -1) {
+                throw new IllegalArgumentException("Unbounded version range: " + range);
+            }
+            restrictions.add(Restriction.parse(process.substring(0, end + 1), range));
+
+            process = process.substring(end + 1);
+            if (process.startsWith(",")) {
+                process = process.substring(1);
+            }
+        }
+        if (restrictions.isEmpty()) {
+            throw new IllegalArgumentException("Empty version range: " + range);
+        }
+
+        return new VersionRange(range, Collections.unmodifiableList(restrictions));
+    }
+
+    public boolean contains(Version version) {
+        for (Restriction r : restrictions) {
+            if (r.contains(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Picks the highest of the given versions that falls in this range.
+     * Snapshots are only considered if a bound of the range is itself a snapshot.
+     *
+     * @param versions The available versions, e.g. from maven-metadata.xml
+     * @return The best match, or null if none match
+     */
+    public String pick(Collection<String> versions) {
+        boolean allowSnapshots = false;
+        for (Restriction r : restrictions) {
+            allowSnapshots |= (r.lower != null && r.lower.isSnapshot()) || (r.upper != null && r.upper.isSnapshot());
+        }
+
+        Version best = null;
+        for (String v : versions) {
+            Version version = Version.parse(v);
+            if ((!allowSnapshots && version.isSnapshot()) || !contains(version)) {
+                continue;
+            }
+            if (best == null || version.compareTo(best) > 0) {
+                best = version;
+            }
+        }
+        return best != null ? best.toString().trim() : null;
+    }
+
+    public String toString() { return range; }
+
+    private static int indexOfClose(String process) {
+        for (int i = 1; i < process.length(); i++) {
+            char c = process.charAt(i);
+            if (c == ']' || c == ')') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Restriction {
+        private final Version lower;
+        private final boolean lowerInclusive;
+        private final Version upper;
+        private final boolean upperInclusive;
+
+        private Restriction(Version lower, boolean lowerInclusive, Version upper, boolean upperInclusive) {
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        private static Restriction parse(String spec, String range) {
+            boolean lowerInclusive = spec.charAt(0) == '[';
+            boolean upperInclusive = spec.charAt(spec.length() - 1) == ']';
+            String inner = spec.substring(1, spec.length() - 1);
+
+            int comma = inner.indexOf(',');
+            if (comma == -1) {
+                // "[1.0]" pins an exact version
+                if (!lowerInclusive || !upperInclusive || inner.isEmpty()) {
+                    throw new IllegalArgumentException("Invalid version range: " + range);
+                }
+                Version exact = Version.parse(inner);
+                return new Restriction(exact, true, exact, true);
+            }
+            if (inner.indexOf(',', comma + 1) > -1) {
+                throw new IllegalArgumentException("Invalid version range: " + range);
+            }
+
+            String lower = inner.substring(0, comma);
+            String upper = inner.substring(comma + 1);
+            Restriction retVal = new Restriction(lower.isEmpty() ? null : Version.parse(lower), lowerInclusive, upper.isEmpty() ? null : Version.parse(upper), upperInclusive);
+            if (retVal.lower != null && retVal.upper != null && retVal.lower.compareTo(retVal.upper) > 0) {
+                throw new IllegalArgumentException("Invalid version range: " + range);
+            }
+            return retVal;
+        }
+
+        private boolean contains(Version version) {
+            if (lower != null) {
+                int c = version.compareTo(lower);
+                if (c < 0 || (c == 0 && !lowerInclusive)) {
+                    return false;
+                }
+            }
+            if (upper != null) {
+                int c = version.compareTo(upper);
+                if (c > 0 || (c == 0 && !upperInclusive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
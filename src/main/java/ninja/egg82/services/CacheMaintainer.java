@@ -0,0 +1,347 @@
+package ninja.egg82.services;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import ninja.egg82.maven.Artifact;
+import ninja.egg82.maven.ArtifactParent;
+import ninja.egg82.utils.MavenUtil;
+
+/**
+ * Keeps a cache directory under a byte budget by evicting the least-recently-used files.
+ * Anything accessed since the maintainer was built, or explicitly protected, is never evicted.
+ */
+public class CacheMaintainer {
+    private static final ConcurrentMap<File, CacheMaintainer> maintainers = new ConcurrentHashMap<>();
+
+    private static final String ACCESS_FILE_NAME = ".access";
+
+    private final File cacheDir;
+    public File getCacheDir() { return cacheDir; }
+
+    private long maxBytes;
+    public long getMaxBytes() { return maxBytes; }
+
+    private int batchSize = 250;
+    public int getBatchSize() { return batchSize; }
+
+    private long intervalMillis = TimeUnit.MINUTES.toMillis(5L);
+    public long getIntervalMillis() { return intervalMillis; }
+
+    private final File accessFile;
+    private final ConcurrentMap<String, Long> lastAccess = new ConcurrentHashMap<>();
+    private final Set<String> sessionEntries = ConcurrentHashMap.newKeySet();
+    private final Set<String> protectedEntries = ConcurrentHashMap.newKeySet();
+
+    private final Object runLock = new Object();
+    private volatile ScheduledExecutorService executor = null;
+
+    private CacheMaintainer(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir.getAbsoluteFile();
+        this.maxBytes = maxBytes;
+        this.accessFile = new File(this.cacheDir, ACCESS_FILE_NAME);
+    }
+
+    public static Builder builder(File cacheDir, long maxBytes) { return new Builder(cacheDir, maxBytes); }
+
+    public static class Builder {
+        private final CacheMaintainer result;
+
+        private Builder(File cacheDir, long maxBytes) {
+            if (cacheDir == null) {
+                throw new IllegalArgumentException("cacheDir cannot be null.");
+            }
+            if (maxBytes < 0L) {
+                throw new IllegalArgumentException("maxBytes cannot be negative.");
+            }
+
+            result = new CacheMaintainer(cacheDir, maxBytes);
+        }
+
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive.");
+            }
+
+            result.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder interval(long interval, TimeUnit unit) {
+            if (interval <= 0L) {
+                throw new IllegalArgumentException("interval must be positive.");
+            }
+            if (unit == null) {
+                throw new IllegalArgumentException("unit cannot be null.");
+            }
+
+            result.intervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public CacheMaintainer build() throws IOException {
+            result.loadAccess();
+            CacheMaintainer old = maintainers.put(result.cacheDir, result);
+            if (old != null) {
+                old.stop();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records an access for the given file with every maintainer that owns it.
+     * This is cheap enough to call on every cache lookup.
+     *
+     * @param file The file that was accessed
+     */
+    public static void recordAccess(File file) {
+        if (file == null || maintainers.isEmpty()) {
+            return;
+        }
+
+        File f = file.getAbsoluteFile();
+        File dir = f.getParentFile();
+        while (dir != null) {
+            CacheMaintainer maintainer = maintainers.get(dir);
+            if (maintainer != null) {
+                maintainer.touch(f);
+            }
+            dir = dir.getParentFile();
+        }
+    }
+
+    public void touch(File file) {
+        String key = toKey(file);
+        if (key == null) {
+            return;
+        }
+        lastAccess.put(key, System.currentTimeMillis());
+        sessionEntries.add(key);
+    }
+
+    public void protect(File file) {
+        String key = toKey(file);
+        if (key != null) {
+            protectedEntries.add(key);
+        }
+    }
+
+    /**
+     * Protects an artifact's POM and parsed model, and those of its parents.
+     * Jars are written wherever the caller chooses, so protect them with
+     * {@link #protect(Artifact, File)}. Jars downloaded or injected during this
+     * session are protected anyway.
+     *
+     * @param artifact The artifact to protect
+     */
+    public void protect(Artifact artifact) {
+        protectPom(MavenUtil.getCachePom(artifact));
+        ArtifactParent p = artifact.getParent();
+        while (p != null) {
+            protectPom(MavenUtil.getCachePom(p));
+            p = p.getParent();
+        }
+    }
+
+    public void protect(Artifact artifact, File jarFile) {
+        protect(artifact);
+        protect(jarFile);
+    }
+
+    private void protectPom(File pomFile) {
+        protect(pomFile);
+        protect(MavenUtil.getCacheModel(pomFile));
+    }
+
+    public void protect(Collection<Artifact> artifacts) {
+        for (Artifact artifact : artifacts) {
+            protect(artifact);
+        }
+    }
+
+    public void clearProtected() {
+        protectedEntries.clear();
+        sessionEntries.clear();
+    }
+
+    public void start() {
+        synchronized (runLock) {
+            if (executor != null) {
+                return;
+            }
+
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread retVal = new Thread(r, "DepDownloader-CacheMaintainer");
+                retVal.setDaemon(true);
+                retVal.setPriority(Thread.MIN_PRIORITY);
+                return retVal;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    runOnce();
+                } catch (IOException ignored) { } // Try again next pass
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        ScheduledExecutorService e;
+        synchronized (runLock) {
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.shutdownNow();
+            try {
+                // A pass already running isn't interruptible, so let it finish before saving over it
+                e.awaitTermination(30L, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        maintainers.remove(cacheDir, this);
+
+        synchronized (runLock) {
+            try {
+                saveAccess();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * Runs a single eviction pass, deleting at most {@link #getBatchSize()} files.
+     *
+     * @return The number of bytes freed
+     * @throws IOException If the cache directory could not be walked
+     */
+    public long runOnce() throws IOException {
+        synchronized (runLock) {
+            if (!cacheDir.isDirectory()) {
+                return 0L;
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            long[] totalBytes = new long[] { 0L };
+            Path root = cacheDir.toPath();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String key = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (key.startsWith(ACCESS_FILE_NAME) || key.startsWith(PomArchive.FILE_NAME)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    totalBytes[0] += attrs.size();
+                    Long accessed = lastAccess.get(key);
+                    entries.add(new Entry(key, file, attrs.size(), accessed != null ? accessed : attrs.lastModifiedTime().toMillis()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult visitFileFailed(Path file, IOException exc) { return FileVisitResult.CONTINUE; }
+            });
+
+            long freed = 0L;
+            if (totalBytes[0] > maxBytes) {
+                entries.sort(Comparator.comparingLong(e -> e.lastAccess));
+
+                int deleted = 0;
+                for (Entry entry : entries) {
+                    if (totalBytes[0] - freed <= maxBytes || deleted >= batchSize) {
+                        break;
+                    }
+                    if (sessionEntries.contains(entry.key) || protectedEntries.contains(entry.key)) {
+                        continue;
+                    }
+
+                    try {
+                        if (Files.deleteIfExists(entry.path)) {
+                            freed += entry.size;
+                            deleted++;
+                            lastAccess.remove(entry.key);
+                            deleteEmptyParents(entry.path.getParent(), root);
+                        }
+                    } catch (IOException ignored) { } // In use or otherwise locked, skip it
+                }
+            }
+
+            saveAccess();
+            return freed;
+        }
+    }
+
+    private void deleteEmptyParents(Path dir, Path root) {
+        while (dir != null && !dir.equals(root) && dir.startsWith(root)) {
+            try {
+                Files.delete(dir);
+            } catch (IOException ignored) {
+                return; // Not empty
+            }
+            dir = dir.getParent();
+        }
+    }
+
+    private String toKey(File file) {
+        if (file == null) {
+            return null;
+        }
+
+        String root = cacheDir.getPath() + File.separator;
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return path.substring(root.length()).replace(File.separatorChar, '/');
+    }
+
+    private void loadAccess() throws IOException {
+        if (!accessFile.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(accessFile))) {
+            properties.load(in);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                lastAccess.putIfAbsent(key, Long.parseLong(properties.getProperty(key)));
+            } catch (NumberFormatException ignored) { }
+        }
+    }
+
+    private void saveAccess() throws IOException {
+        if (!cacheDir.isDirectory()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> kvp : lastAccess.entrySet()) {
+            properties.setProperty(kvp.getKey(), String.valueOf(kvp.getValue()));
+        }
+
+        File tmp = new File(cacheDir, ACCESS_FILE_NAME + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            properties.store(out, null);
+        }
+        Files.move(tmp.toPath(), accessFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Entry {
+        private final String key;
+        private final Path path;
+        private final long size;
+        private final long lastAccess;
+
+        private Entry(String key, Path path, long size, long lastAccess) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
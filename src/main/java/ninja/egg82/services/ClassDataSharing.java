@@ -0,0 +1,270 @@
+package ninja.egg82.services;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import ninja.egg82.utils.DigestUtil;
+
+/**
+ * Opt-in AppCDS support for launchers that start a child JVM on a resolved jar set.
+ *
+ * Classes defined by a {@link ProxiedURLClassLoader} are recorded into a class list
+ * keyed by a digest of the jar set. {@link #dump()} then runs the JDK's archive dump
+ * against that list. AppCDS only covers classes the built-in loaders take from the
+ * launch class path, so the archive is only used by a JVM launched with
+ * {@link #getJvmArguments()} and the same jars, in the same order, as its class path
+ * ({@link #getClassPath()}). Classes injected into a ProxiedURLClassLoader at runtime
+ * never come from it. Dumping needs JDK 11 or newer.
+ */
+public class ClassDataSharing {
+    private static final String DIR_NAME = "cds";
+
+    private final List<File> jars;
+    public List<File> getJars() { return Collections.unmodifiableList(jars); }
+
+    private final String digest;
+    public String getDigest() { return digest; }
+
+    private final File classListFile;
+    public File getClassListFile() { return classListFile; }
+
+    private final File archiveFile;
+    public File getArchiveFile() { return archiveFile; }
+
+    private File javaExecutable = new File(System.getProperty("java.home"), "bin" + File.separator + "java");
+    public File getJavaExecutable() { return javaExecutable; }
+
+    private long dumpTimeoutMillis = TimeUnit.MINUTES.toMillis(5L);
+    public long getDumpTimeoutMillis() { return dumpTimeoutMillis; }
+
+    private final Set<String> recorded = ConcurrentHashMap.newKeySet();
+
+    private ClassDataSharing(File cacheDir, List<File> jars) throws IOException {
+        this.jars = jars;
+        this.digest = DigestUtil.getDigest(jars);
+
+        File dir = new File(cacheDir, DIR_NAME);
+        this.classListFile = new File(dir, digest + ".classlist");
+        this.archiveFile = new File(dir, digest + ".jsa");
+    }
+
+    public static Builder builder(File cacheDir, Collection<File> jars) { return new Builder(cacheDir, jars); }
+
+    public static class Builder {
+        private final File cacheDir;
+        private final List<File> jars;
+        private File javaExecutable = null;
+        private long dumpTimeoutMillis = -1L;
+
+        private Builder(File cacheDir, Collection<File> jars) {
+            if (cacheDir == null) {
+                throw new IllegalArgumentException("cacheDir cannot be null.");
+            }
+            if (jars == null) {
+                throw new IllegalArgumentException("jars cannot be null.");
+            }
+
+            this.cacheDir = cacheDir;
+            this.jars = new ArrayList<>(jars.size());
+            for (File jar : jars) {
+                if (jar == null) {
+                    throw new IllegalArgumentException("jars cannot contain null.");
+                }
+                this.jars.add(jar.getAbsoluteFile());
+            }
+        }
+
+        public Builder javaExecutable(File javaExecutable) {
+            if (javaExecutable == null) {
+                throw new IllegalArgumentException("javaExecutable cannot be null.");
+            }
+
+            this.javaExecutable = javaExecutable;
+            return this;
+        }
+
+        public Builder dumpTimeout(long timeout, TimeUnit unit) {
+            if (timeout <= 0L) {
+                throw new IllegalArgumentException("timeout must be positive.");
+            }
+            if (unit == null) {
+                throw new IllegalArgumentException("unit cannot be null.");
+            }
+
+            this.dumpTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public ClassDataSharing build() throws IOException {
+            ClassDataSharing result = new ClassDataSharing(cacheDir, jars);
+            if (javaExecutable != null) {
+                result.javaExecutable = javaExecutable;
+            }
+            if (dumpTimeoutMillis > 0L) {
+                result.dumpTimeoutMillis = dumpTimeoutMillis;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records a class defined from the jar set. Intended to be passed to
+     * {@link ProxiedURLClassLoader#setDefineListener(java.util.function.Consumer)}.
+     *
+     * @param className The binary name of the class
+     */
+    public void record(String className) {
+        if (className != null) {
+            recorded.add(className.replace('.', '/'));
+        }
+    }
+
+    public boolean hasClassList() { return classListFile.isFile(); }
+
+    public boolean hasArchive() { return archiveFile.isFile(); }
+
+    /**
+     * Merges the classes recorded this run into the class list on disk.
+     *
+     * @return true if the class list changed
+     * @throws IOException If the class list could not be read or written
+     */
+    public boolean saveClassList() throws IOException {
+        Set<String> classes = new TreeSet<>(readClassList());
+        if (!classes.addAll(recorded)) {
+            return false;
+        }
+
+        File dir = classListFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create parent directory structure.");
+        }
+
+        File tmp = new File(classListFile.getPath() + ".tmp");
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            for (String c : classes) {
+                out.write(c);
+                out.newLine();
+            }
+        }
+        Files.move(tmp.toPath(), classListFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Dumps a shared archive from the saved class list in a separate JVM.
+     * Classes that the JDK can't archive are skipped by the dump itself.
+     *
+     * @return true if an archive was produced
+     * @throws IOException If there is no class list or the dump could not be run
+     */
+    public boolean dump() throws IOException {
+        if (!hasClassList()) {
+            throw new IOException("No class list has been saved for this jar set.");
+        }
+        if (getJavaVersion(javaExecutable) < 11) {
+            throw new IOException("Dumping an archive of application classes needs JDK 11 or newer.");
+        }
+
+        File tmp = new File(archiveFile.getPath() + ".tmp");
+        List<String> command = new ArrayList<>();
+        command.add(javaExecutable.getPath());
+        command.add("-Xshare:dump");
+        command.add("-XX:SharedClassListFile=" + classListFile.getAbsolutePath());
+        command.add("-XX:SharedArchiveFile=" + tmp.getAbsolutePath());
+        command.add("-cp");
+        command.add(getClassPath());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(archiveFile.getPath() + ".log")))
+                .start();
+        try {
+            if (!process.waitFor(dumpTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("Archive dump timed out.");
+            }
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dumping archive.", ex);
+        }
+
+        if (process.exitValue() != 0 || !tmp.isFile()) {
+            Files.deleteIfExists(tmp.toPath());
+            return false;
+        }
+        Files.move(tmp.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    public String getClassPath() {
+        StringBuilder retVal = new StringBuilder();
+        for (File jar : jars) {
+            if (retVal.length() > 0) {
+                retVal.append(File.pathSeparatorChar);
+            }
+            retVal.append(jar.getPath());
+        }
+        return retVal.toString();
+    }
+
+    /**
+     * Returns the JVM options that map the archive, or an empty list if there isn't one yet.
+     *
+     * @return The options to add to the next launch
+     */
+    public List<String> getJvmArguments() {
+        if (!hasArchive()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList("-Xshare:auto", "-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath());
+    }
+
+    private Set<String> readClassList() throws IOException {
+        if (!classListFile.isFile()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> retVal = new HashSet<>();
+        for (String line : Files.readAllLines(classListFile.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                retVal.add(line);
+            }
+        }
+        return retVal;
+    }
+
+    private static int getJavaVersion(File javaExecutable) {
+        String version = null;
+        File home = javaExecutable.getAbsoluteFile().getParentFile();
+        File release = home != null && home.getParentFile() != null ? new File(home.getParentFile(), "release") : null;
+        if (release != null && release.isFile()) {
+            try {
+                for (String line : Files.readAllLines(release.toPath(), StandardCharsets.UTF_8)) {
+                    if (line.startsWith("JAVA_VERSION=")) {
+                        version = line.substring("JAVA_VERSION=".length()).replace("\"", "");
+                        break;
+                    }
+                }
+            } catch (IOException ignored) { }
+        }
+        if (version == null) {
+            version = System.getProperty("java.specification.version", "");
+        }
+
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        return end > 0 ? Integer.parseInt(version.substring(0, end)) : 0;
+    }
+}
@@ -0,0 +1,118 @@
+package ninja.egg82.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/**
+ * Counters and timers for a {@link ProxiedURLClassLoader}, split by the layer a lookup went to.
+ * Misses answered from the loader's negative cache are counted but take no measurable time.
+ * Bytes defined count every class the loader defines from its own URLs. Classes read from
+ * something other than a file or jar URL count as zero.
+ */
+public class ClassLoadingStats implements ClassLoadingStatsMXBean {
+    public enum Layer {
+        LOCAL,
+        PARENT,
+        SYSTEM
+    }
+
+    private final LongAdder[] hits = newAdders();
+    private final LongAdder[] misses = newAdders();
+    private final LongAdder[] nanos = newAdders();
+    private final LongAdder exclusions = new LongAdder();
+    private final LongAdder bytesDefined = new LongAdder();
+
+    private volatile ObjectName objectName = null;
+
+    void record(Layer layer, boolean hit, long elapsedNanos) {
+        (hit ? hits : misses)[layer.ordinal()].increment();
+        nanos[layer.ordinal()].add(elapsedNanos);
+    }
+
+    void recordExclusion() { exclusions.increment(); }
+
+    void recordDefined(long bytes) { bytesDefined.add(bytes); }
+
+    public long getHits(Layer layer) { return hits[layer.ordinal()].sum(); }
+
+    public long getMisses(Layer layer) { return misses[layer.ordinal()].sum(); }
+
+    public long getTime(Layer layer, TimeUnit unit) { return unit.convert(nanos[layer.ordinal()].sum(), TimeUnit.NANOSECONDS); }
+
+    public long getLocalHits() { return getHits(Layer.LOCAL); }
+
+    public long getLocalMisses() { return getMisses(Layer.LOCAL); }
+
+    public long getLocalTimeNanos() { return getTime(Layer.LOCAL, TimeUnit.NANOSECONDS); }
+
+    public long getParentHits() { return getHits(Layer.PARENT); }
+
+    public long getParentMisses() { return getMisses(Layer.PARENT); }
+
+    public long getParentTimeNanos() { return getTime(Layer.PARENT, TimeUnit.NANOSECONDS); }
+
+    public long getSystemHits() { return getHits(Layer.SYSTEM); }
+
+    public long getSystemMisses() { return getMisses(Layer.SYSTEM); }
+
+    public long getSystemTimeNanos() { return getTime(Layer.SYSTEM, TimeUnit.NANOSECONDS); }
+
+    public long getExclusions() { return exclusions.sum(); }
+
+    public long getBytesDefined() { return bytesDefined.sum(); }
+
+    public void reset() {
+        for (Layer layer : Layer.values()) {
+            hits[layer.ordinal()].reset();
+            misses[layer.ordinal()].reset();
+            nanos[layer.ordinal()].reset();
+        }
+        exclusions.reset();
+        bytesDefined.reset();
+    }
+
+    /**
+     * Registers these stats with the platform MBean server.
+     *
+     * @param name The value of the "name" key in the object name, e.g. the plugin using the loader
+     * @throws JMException If the name is invalid or already registered
+     */
+    public void register(String name) throws JMException {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null.");
+        }
+
+        ObjectName objectName = new ObjectName("ninja.egg82:type=ClassLoadingStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    public void unregister() throws JMException {
+        ObjectName objectName = this.objectName;
+        if (objectName != null) {
+            this.objectName = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+    }
+
+    public String toString() {
+        StringBuilder retVal = new StringBuilder();
+        for (Layer layer : Layer.values()) {
+            retVal.append(layer.name().toLowerCase())
+                    .append(": ").append(getHits(layer)).append(" hits, ")
+                    .append(getMisses(layer)).append(" misses, ")
+                    .append(getTime(layer, TimeUnit.MILLISECONDS)).append("ms; ");
+        }
+        return retVal.append(getExclusions()).append(" exclusions, ").append(getBytesDefined()).append(" bytes defined").toString();
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] retVal = new LongAdder[Layer.values().length];
+        for (int i = 0; i < retVal.length; i++) {
+            retVal[i] = new LongAdder();
+        }
+        return retVal;
+    }
+}
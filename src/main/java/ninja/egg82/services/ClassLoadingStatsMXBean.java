@@ -0,0 +1,27 @@
+package ninja.egg82.services;
+
+public interface ClassLoadingStatsMXBean {
+    long getLocalHits();
+
+    long getLocalMisses();
+
+    long getLocalTimeNanos();
+
+    long getParentHits();
+
+    long getParentMisses();
+
+    long getParentTimeNanos();
+
+    long getSystemHits();
+
+    long getSystemMisses();
+
+    long getSystemTimeNanos();
+
+    long getExclusions();
+
+    long getBytesDefined();
+
+    void reset();
+}
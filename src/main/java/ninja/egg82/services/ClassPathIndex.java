@@ -0,0 +1,114 @@
+package ninja.egg82.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Records the packages and resource names on the class path, built as URLs are added.
+ * If any entry can't be indexed (a directory, a remote URL, an unreadable jar) the
+ * index is marked incomplete and callers must fall back to a full lookup.
+ */
+class ClassPathIndex {
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+    private final Set<String> packages = ConcurrentHashMap.newKeySet();
+    private final Set<String> resources = ConcurrentHashMap.newKeySet();
+    private volatile boolean complete = true;
+
+    boolean isComplete() { return complete; }
+
+    boolean ownsPackage(String packageName) { return packages.contains(packageName); }
+
+    boolean ownsResource(String name) { return resources.contains(name.endsWith("/") ? name.substring(0, name.length() - 1) : name); }
+
+    void addAll(Collection<URL> urls) {
+        // Scan the whole batch first, then publish it in one merge
+        Set<String> newPackages = new HashSet<>();
+        Set<String> newResources = new HashSet<>();
+        boolean indexed = true;
+        for (URL url : urls) {
+            indexed &= scan(url, newPackages, newResources);
+        }
+
+        packages.addAll(newPackages);
+        resources.addAll(newResources);
+        if (!indexed) {
+            complete = false;
+        }
+    }
+
+    private static boolean scan(URL url, Set<String> packages, Set<String> resources) {
+        File file = toFile(url);
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+
+        try (JarFile jar = new JarFile(file, false)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = stripVersion(entry.getName());
+                addResource(resources, entry.getName());
+                if (!name.equals(entry.getName())) {
+                    addResource(resources, name);
+                }
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                if (name.endsWith(".class")) {
+                    packages.add(getEntryPackage(name));
+                }
+            }
+            return true;
+        } catch (IOException | SecurityException ignored) {
+            return false;
+        }
+    }
+
+    private static void addResource(Set<String> resources, String name) {
+        // Jars don't always contain directory entries, so register every parent as well
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        while (!name.isEmpty() && resources.add(name)) {
+            int slash = name.lastIndexOf('/');
+            name = slash > -1 ? name.substring(0, slash) : "";
+        }
+    }
+
+    static String getPackageName(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot > -1 ? className.substring(0, dot) : "";
+    }
+
+    private static String getEntryPackage(String entryName) {
+        int slash = entryName.lastIndexOf('/');
+        return slash > -1 ? entryName.substring(0, slash).replace('/', '.') : "";
+    }
+
+    private static String stripVersion(String name) {
+        if (!name.startsWith(VERSIONS_PREFIX)) {
+            return name;
+        }
+        int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+        return slash > -1 ? name.substring(slash + 1) : name;
+    }
+
+    private static File toFile(URL url) {
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+}
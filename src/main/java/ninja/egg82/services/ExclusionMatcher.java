@@ -0,0 +1,214 @@
+package ninja.egg82.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches class names against a set of exclusion patterns.
+ *
+ * Patterns that are plain prefixes or names (e.g. "com\\.foo\\..*" or "com.foo.*")
+ * are compiled into a trie, where an unescaped '.' matches any character just as it
+ * would in the regex. Everything else is combined into as few regexes as possible.
+ * Decisions are cached per class name, and per package whenever the result can't
+ * depend on the simple class name.
+ */
+class ExclusionMatcher {
+    private static final int MAX_CACHED_DECISIONS = 8192;
+
+    private final Node root = new Node();
+    private final List<Pattern> fallback = new ArrayList<>();
+    private final boolean empty;
+
+    private final ConcurrentMap<String, Boolean> decisions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> packageDecisions = new ConcurrentHashMap<>();
+
+    ExclusionMatcher(Collection<Pattern> patterns) {
+        StringBuilder combined = new StringBuilder();
+        for (Pattern pattern : patterns) {
+            if (pattern == null) {
+                continue;
+            }
+
+            if (pattern.flags() == 0 && addToTrie(pattern.pattern())) {
+                continue;
+            }
+
+            if (pattern.flags() == 0 && isCombinable(pattern.pattern())) {
+                if (combined.length() > 0) {
+                    combined.append('|');
+                }
+                combined.append("(?:").append(pattern.pattern()).append(')');
+            } else {
+                fallback.add(pattern);
+            }
+        }
+        if (combined.length() > 0) {
+            fallback.add(0, Pattern.compile(combined.toString()));
+        }
+
+        empty = fallback.isEmpty() && root.isLeaf() && !root.prefixEnd && !root.exactEnd;
+    }
+
+    boolean isExcluded(String name) {
+        if (empty || name == null) {
+            return false;
+        }
+
+        Boolean retVal = decisions.get(name);
+        if (retVal != null) {
+            return retVal;
+        }
+
+        String packageName = ClassPathIndex.getPackageName(name);
+        if (!packageName.isEmpty()) {
+            retVal = packageDecisions.get(packageName);
+            if (retVal != null) {
+                return retVal;
+            }
+        }
+
+        Search search = new Search(name);
+        boolean excluded = search.matches(root, 0);
+        boolean packageWide = !packageName.isEmpty() && (excluded ? search.matchedAt <= packageName.length() + 1 : search.maxRead <= packageName.length());
+
+        if (!excluded) {
+            for (Pattern p : fallback) {
+                if (p.matcher(name).matches()) {
+                    excluded = true;
+                    break;
+                }
+            }
+            packageWide &= fallback.isEmpty();
+        }
+
+        if (packageWide) {
+            cache(packageDecisions, packageName, excluded);
+        } else {
+            cache(decisions, name, excluded);
+        }
+        return excluded;
+    }
+
+    private static void cache(ConcurrentMap<String, Boolean> cache, String key, boolean value) {
+        if (cache.size() >= MAX_CACHED_DECISIONS) {
+            cache.clear();
+        }
+        cache.put(key, value);
+    }
+
+    private boolean addToTrie(String pattern) {
+        int start = 0;
+        int end = pattern.length();
+        if (end > 0 && pattern.charAt(0) == '^') {
+            start++;
+        }
+        if (end > start && pattern.charAt(end - 1) == '$' && (end - 2 < start || pattern.charAt(end - 2) != '\\')) {
+            end--;
+        }
+
+        boolean prefix = false;
+        if (end - start >= 2 && pattern.charAt(end - 1) == '*' && pattern.charAt(end - 2) == '.' && (end - 3 < start || pattern.charAt(end - 3) != '\\')) {
+            prefix = true;
+            end -= 2;
+        }
+
+        // Tokenize first so unsupported patterns don't leave half-built paths in the trie
+        List<Character> tokens = new ArrayList<>(); // null = any character
+        for (int i = start; i < end; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= end) {
+                    return false;
+                }
+                char next = pattern.charAt(++i);
+                if (next != '.' && next != '$' && next != '-') {
+                    return false;
+                }
+                tokens.add(next);
+            } else if (c == '.') {
+                tokens.add(null);
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '-') {
+                tokens.add(c);
+            } else {
+                return false;
+            }
+        }
+
+        Node node = root;
+        for (Character token : tokens) {
+            if (token == null) {
+                if (node.any == null) {
+                    node.any = new Node();
+                }
+                node = node.any;
+            } else {
+                node = node.children.computeIfAbsent(token, k -> new Node());
+            }
+        }
+        if (prefix) {
+            node.prefixEnd = true;
+        } else {
+            node.exactEnd = true;
+        }
+        return true;
+    }
+
+    private static boolean isCombinable(String pattern) {
+        // Numbered back-references and named groups would clash once patterns are joined
+        for (int i = 0; i < pattern.length() - 1; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (Character.isDigit(pattern.charAt(i + 1)) || pattern.charAt(i + 1) == 'k') {
+                    return false;
+                }
+                i++;
+            } else if (c == '(' && pattern.startsWith("?<", i + 1) && i + 3 < pattern.length() && pattern.charAt(i + 3) != '=' && pattern.charAt(i + 3) != '!') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Search {
+        private final String name;
+        private int maxRead = -1;
+        private int matchedAt = -1;
+
+        private Search(String name) { this.name = name; }
+
+        private boolean matches(Node node, int i) {
+            if (node.prefixEnd) {
+                matchedAt = i;
+                return true;
+            }
+            if (i == name.length()) {
+                if (node.exactEnd) {
+                    matchedAt = i;
+                    return true;
+                }
+                return false;
+            }
+            if (node.isLeaf()) {
+                return false;
+            }
+
+            maxRead = Math.max(maxRead, i);
+            Node next = node.children.get(name.charAt(i));
+            if (next != null && matches(next, i + 1)) {
+                return true;
+            }
+            return node.any != null && matches(node.any, i + 1);
+        }
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private Node any = null;
+        private boolean prefixEnd = false;
+        private boolean exactEnd = false;
+
+        private boolean isLeaf() { return children.isEmpty() && any == null; }
+    }
+}
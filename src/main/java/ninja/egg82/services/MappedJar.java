@@ -0,0 +1,226 @@
+package ninja.egg82.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A jar mapped into memory once, with its central directory parsed into an index.
+ * STORED entries are returned as slices of the mapping; DEFLATED entries are inflated
+ * into a heap buffer. Multi-release entries are resolved like JarFile does. Zip64
+ * archives are not supported.
+ */
+class MappedJar {
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+    private static final int RUNTIME_VERSION = getRuntimeVersion();
+
+    private final URL url;
+    URL getURL() { return url; }
+
+    private final CodeSource codeSource;
+    CodeSource getCodeSource() { return codeSource; }
+
+    private final MappedByteBuffer buffer;
+    private final Map<String, Entry> entries;
+    private final Manifest manifest;
+    private final boolean multiRelease;
+
+    private boolean signed = false;
+    boolean isSigned() { return signed; }
+
+    private MappedJar(URL url, MappedByteBuffer buffer) throws IOException {
+        this.url = url;
+        this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+        this.buffer = buffer;
+        this.entries = readCentralDirectory();
+
+        Entry manifestEntry = entries.get("META-INF/MANIFEST.MF");
+        if (manifestEntry != null) {
+            ByteBuffer data = read(manifestEntry);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            manifest = new Manifest(new ByteArrayInputStream(bytes));
+        } else {
+            manifest = null;
+        }
+        multiRelease = manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(new Attributes.Name("Multi-Release")));
+    }
+
+    static MappedJar open(File file, URL url) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Jar is too large to map: " + file.getPath());
+            }
+            return new MappedJar(url, channel.map(FileChannel.MapMode.READ_ONLY, 0L, size));
+        }
+    }
+
+    Manifest getManifest() { return manifest; }
+
+    boolean isMultiRelease() { return multiRelease; }
+
+    Entry getEntry(String name) {
+        if (multiRelease) {
+            // Same lookup order as JarFile: newest versioned entry the runtime supports, then the base entry
+            for (int version = RUNTIME_VERSION; version >= 9; version--) {
+                Entry retVal = entries.get(VERSIONS_PREFIX + version + "/" + name);
+                if (retVal != null) {
+                    return retVal;
+                }
+            }
+        }
+        return entries.get(name);
+    }
+
+    ByteBuffer read(Entry entry) throws IOException {
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (entry.localOffset + LOC_SIZE > b.limit() || b.getInt(entry.localOffset) != LOC_SIGNATURE) {
+            throw new IOException("Bad local header for " + entry.name);
+        }
+        int start = entry.localOffset + LOC_SIZE + (b.getShort(entry.localOffset + 26) & 0xFFFF) + (b.getShort(entry.localOffset + 28) & 0xFFFF);
+        if (start + entry.compressedSize > b.limit()) {
+            throw new IOException("Truncated entry " + entry.name);
+        }
+
+        b.position(start);
+        b.limit(start + entry.compressedSize);
+        if (entry.method == ZipEntry.STORED) {
+            return b.slice();
+        }
+
+        byte[] input = new byte[entry.compressedSize];
+        b.get(input);
+        byte[] output = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int total = 0;
+            while (total < output.length) {
+                int read = inflater.inflate(output, total, output.length - total);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                total += read;
+            }
+            if (total != output.length) {
+                throw new IOException("Bad compressed data for " + entry.name);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Bad compressed data for " + entry.name, ex);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = b.limit() - EOCD_SIZE, min = Math.max(0, b.limit() - EOCD_SIZE - 0xFFFF); i >= min; i--) {
+            if (b.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new IOException("No end of central directory found.");
+        }
+
+        int count = b.getShort(eocd + 10) & 0xFFFF;
+        long offset = b.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new IOException("Zip64 jars are not supported.");
+        }
+
+        Map<String, Entry> retVal = new HashMap<>(Math.max(16, count * 2));
+        int pos = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (pos + CEN_SIZE > b.limit() || b.getInt(pos) != CEN_SIGNATURE) {
+                throw new IOException("Bad central directory.");
+            }
+
+            int flags = b.getShort(pos + 8) & 0xFFFF;
+            int method = b.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = b.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = b.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = b.getShort(pos + 28) & 0xFFFF;
+            int extraLength = b.getShort(pos + 30) & 0xFFFF;
+            int commentLength = b.getShort(pos + 32) & 0xFFFF;
+            long localOffset = b.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+                throw new IOException("Zip64 jars are not supported.");
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            b.position(pos + CEN_SIZE);
+            b.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // The JDK can't read encrypted entries or other methods either
+            if ((flags & 1) == 0 && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) && !name.endsWith("/")) {
+                retVal.put(name, new Entry(name, method, (int) compressedSize, (int) size, (int) localOffset));
+                if (isSignatureFile(name)) {
+                    signed = true;
+                }
+            }
+
+            pos += CEN_SIZE + nameLength + extraLength + commentLength;
+        }
+        return retVal;
+    }
+
+    private static int getRuntimeVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        try {
+            return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+        } catch (NumberFormatException ignored) {
+            return 8;
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', 9) > -1) {
+            return false;
+        }
+        return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+    }
+
+    static class Entry {
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localOffset;
+
+        private Entry(String name, int method, int compressedSize, int size, int localOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ninja.egg82.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link ProxiedURLClassLoader} that maps each injected jar into memory once and
+ * defines classes straight from the mapping instead of going through JarFile streams.
+ *
+ * If any URL can't be mapped (directories, remote URLs, signed or Zip64 jars) the
+ * loader falls back to the regular URLClassLoader lookup for everything, since class
+ * path order has to be kept. Resources are always served the regular way.
+ */
+public class MappedURLClassLoader extends ProxiedURLClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final List<MappedJar> jars = new CopyOnWriteArrayList<>();
+    private volatile boolean mapped = true;
+
+    public MappedURLClassLoader(ClassLoader parent, String[] excludedPatterns) { super(parent, excludedPatterns); }
+
+    public MappedURLClassLoader(ClassLoader parent, Pattern[] excludedPatterns) { super(parent, excludedPatterns); }
+
+    public MappedURLClassLoader(ClassLoader parent) { super(parent); }
+
+    public boolean isMapped() { return mapped; }
+
+    @Override
+    public void addURLs(Collection<URL> urls) {
+        // Map before the URLs are visible through the index, so lookups never miss them
+        for (URL url : urls) {
+            if (!mapped) {
+                break;
+            }
+
+            MappedJar jar = open(url);
+            if (jar != null) {
+                jars.add(jar);
+            } else {
+                mapped = false;
+                jars.clear();
+            }
+        }
+        super.addURLs(urls);
+    }
+
+    @Override
+    protected Class<?> findOwnClass(String name) throws ClassNotFoundException {
+        if (!mapped) {
+            return super.findOwnClass(name);
+        }
+
+        String path = name.replace('.', '/').concat(".class");
+        for (MappedJar jar : jars) {
+            MappedJar.Entry entry = jar.getEntry(path);
+            if (entry == null) {
+                continue;
+            }
+
+            ByteBuffer data;
+            try {
+                data = jar.read(entry);
+            } catch (IOException ex) {
+                throw new ClassNotFoundException(name, ex);
+            }
+            ClassLoadingStats stats = getStats();
+            if (stats != null) {
+                stats.recordDefined(data.remaining());
+            }
+            definePackage(name, jar);
+            return defineClass(name, data, jar.getCodeSource());
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = false;
+        jars.clear();
+        super.close();
+    }
+
+    private void definePackage(String className, MappedJar jar) {
+        String packageName = ClassPathIndex.getPackageName(className);
+        if (packageName.isEmpty() || getPackage(packageName) != null) {
+            return;
+        }
+
+        try {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                definePackage(packageName, manifest, jar.getURL());
+            } else {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException ignored) { } // Defined concurrently
+    }
+
+    private static MappedJar open(URL url) {
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+
+        try {
+            File file = new File(url.toURI());
+            if (!file.isFile()) {
+                return null;
+            }
+            MappedJar retVal = MappedJar.open(file, url);
+            return retVal.isSigned() ? null : retVal;
+        } catch (URISyntaxException | IllegalArgumentException | IOException ignored) {
+            return null;
+        }
+    }
+}
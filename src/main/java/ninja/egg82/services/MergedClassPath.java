@@ -0,0 +1,185 @@
+package ninja.egg82.services;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.*;
+import ninja.egg82.utils.DigestUtil;
+import ninja.egg82.utils.InjectUtil;
+
+/**
+ * Merges a resolved set of jars into a single cached jar, so it can be injected as one URL.
+ *
+ * Entries are deduplicated with the first jar in class path order winning, files under
+ * META-INF/services are concatenated, and manifests, signatures and module descriptors
+ * are dropped. The merged jar is keyed by a digest of the set and only rebuilt when
+ * the set changes.
+ */
+public class MergedClassPath {
+    private static final String DIR_NAME = "merged";
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+
+    private final List<File> jars;
+    public List<File> getJars() { return Collections.unmodifiableList(jars); }
+
+    private final String digest;
+    public String getDigest() { return digest; }
+
+    private final File file;
+    public File getFile() { return file; }
+
+    private boolean rebuilt = false;
+    public boolean wasRebuilt() { return rebuilt; }
+
+    private MergedClassPath(File cacheDir, List<File> jars) throws IOException {
+        this.jars = jars;
+        this.digest = DigestUtil.getDigest(jars);
+        this.file = new File(new File(cacheDir, DIR_NAME), digest + ".jar");
+    }
+
+    public static Builder builder(File cacheDir, Collection<File> jars) { return new Builder(cacheDir, jars); }
+
+    public static class Builder {
+        private final File cacheDir;
+        private final List<File> jars;
+
+        private Builder(File cacheDir, Collection<File> jars) {
+            if (cacheDir == null) {
+                throw new IllegalArgumentException("cacheDir cannot be null.");
+            }
+            if (jars == null) {
+                throw new IllegalArgumentException("jars cannot be null.");
+            }
+
+            this.cacheDir = cacheDir;
+            this.jars = new ArrayList<>(jars.size());
+            for (File jar : jars) {
+                if (jar == null) {
+                    throw new IllegalArgumentException("jars cannot contain null.");
+                }
+                this.jars.add(jar.getAbsoluteFile());
+            }
+        }
+
+        public MergedClassPath build() throws IOException {
+            MergedClassPath result = new MergedClassPath(cacheDir, jars);
+            CacheMaintainer.recordAccess(result.file);
+            if (!result.file.isFile()) {
+                result.merge();
+                result.rebuilt = true;
+            }
+            return result;
+        }
+    }
+
+    public void inject(URLClassLoader classLoader) throws IOException, IllegalAccessException, InvocationTargetException { InjectUtil.injectFile(file, classLoader); }
+
+    private void merge() throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create parent directory structure.");
+        }
+
+        // The manifest goes first so JarInputStream readers can see it
+        Manifest merged = new Manifest();
+        merged.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        for (File jar : jars) {
+            try (JarFile in = new JarFile(jar, false)) {
+                Manifest manifest = in.getManifest();
+                if (manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"))) {
+                    merged.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+                }
+            }
+        }
+
+        Set<String> written = new HashSet<>();
+        Map<String, Set<String>> services = new TreeMap<>();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        byte[] buffer = new byte[8192];
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), merged)) {
+            for (File jar : jars) {
+                try (JarFile in = new JarFile(jar, false)) {
+                    Enumeration<JarEntry> entries = in.entries();
+                    while (entries.hasMoreElements()) {
+                        JarEntry entry = entries.nextElement();
+                        String name = entry.getName();
+                        if (isDropped(name)) {
+                            continue;
+                        }
+
+                        if (name.startsWith(SERVICES_PREFIX) && !entry.isDirectory() && name.length() > SERVICES_PREFIX.length()) {
+                            try (InputStream stream = in.getInputStream(entry)) {
+                                readServices(stream, services.computeIfAbsent(name, k -> new LinkedHashSet<>()));
+                            }
+                            continue;
+                        }
+
+                        if (!written.add(name)) {
+                            continue; // Earlier jars win, same as class path order
+                        }
+
+                        JarEntry copy = new JarEntry(name);
+                        copy.setTime(entry.getTime());
+                        out.putNextEntry(copy);
+                        if (!entry.isDirectory()) {
+                            try (InputStream stream = in.getInputStream(entry)) {
+                                int read;
+                                while ((read = stream.read(buffer)) > -1) {
+                                    out.write(buffer, 0, read);
+                                }
+                            }
+                        }
+                        out.closeEntry();
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Set<String>> kvp : services.entrySet()) {
+                out.putNextEntry(new JarEntry(kvp.getKey()));
+                for (String line : kvp.getValue()) {
+                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                }
+                out.closeEntry();
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp.toPath());
+            throw ex;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void readServices(InputStream stream, Set<String> providers) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment > -1) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                providers.add(line);
+            }
+        }
+    }
+
+    private static boolean isDropped(String name) {
+        if (name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || name.equalsIgnoreCase("META-INF/INDEX.LIST")) {
+            return true;
+        }
+        if (name.equals("module-info.class") || (name.startsWith("META-INF/versions/") && name.endsWith("/module-info.class"))) {
+            return true;
+        }
+        if (name.startsWith("META-INF/") && name.indexOf('/', 9) == -1) {
+            String upper = name.toUpperCase(Locale.ROOT);
+            return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-");
+        }
+        return false;
+    }
+}
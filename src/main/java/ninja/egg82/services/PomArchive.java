@@ -0,0 +1,415 @@
+package ninja.egg82.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An append-only, memory-mapped store for small cached documents (POMs, metadata).
+ * Entries are keyed by their path relative to the cache directory, so lookups map
+ * one-to-one with the loose files they replace.
+ *
+ * File layout: a header (magic, format version) followed by records of
+ * [int keyLength][key bytes (UTF-8)][int dataLength][data bytes].
+ * Later records for the same key shadow earlier ones until the archive is compacted.
+ *
+ * Appends aren't coordinated between processes, so only one process can have an
+ * archive open at a time. It holds an exclusive lock on a sibling lock file until the
+ * archive is closed, and {@link #open(File)} fails in any other process meanwhile.
+ */
+public class PomArchive implements Closeable {
+    private static final ConcurrentMap<File, PomArchive> archives = new ConcurrentHashMap<>();
+
+    public static final String FILE_NAME = ".pom-archive";
+
+    private static final int MAGIC = 0x44445041; // DDPA
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+
+    private final File cacheDir;
+    public File getCacheDir() { return cacheDir; }
+
+    private final File file;
+    public File getFile() { return file; }
+
+    private final FileChannel lockChannel;
+    private FileLock lock;
+
+    private volatile State state = new State();
+
+    private FileChannel channel;
+    private long length;
+    private long liveRecordBytes = 0L;
+
+    private PomArchive(File cacheDir) throws IOException {
+        this.cacheDir = cacheDir.getAbsoluteFile();
+        this.file = new File(this.cacheDir, FILE_NAME);
+
+        lockChannel = FileChannel.open(new File(this.cacheDir, FILE_NAME + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ignored) { }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("POM archive is in use by another process: " + file);
+        }
+
+        try {
+            open();
+        } catch (IOException ex) {
+            releaseLock();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens (or creates) the archive for the given cache directory and registers it
+     * so the resolver reads POMs and metadata from it instead of loose files.
+     *
+     * @param cacheDir The cache directory
+     * @return The archive for the cache directory
+     * @throws IOException If the archive could not be opened, or another process has it open
+     */
+    public static PomArchive open(File cacheDir) throws IOException {
+        if (cacheDir == null) {
+            throw new IllegalArgumentException("cacheDir cannot be null.");
+        }
+
+        File dir = cacheDir.getAbsoluteFile();
+        synchronized (archives) {
+            PomArchive retVal = archives.get(dir);
+            if (retVal == null) {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    throw new IOException("Could not create directory structure.");
+                }
+                retVal = new PomArchive(dir);
+                archives.put(dir, retVal);
+            }
+            return retVal;
+        }
+    }
+
+    /**
+     * Returns the registered archive for a cache directory.
+     *
+     * @param cacheDir The cache directory
+     * @return The archive, or null if none is open for the directory
+     */
+    public static PomArchive get(File cacheDir) {
+        if (cacheDir == null || archives.isEmpty()) {
+            return null;
+        }
+        return archives.get(cacheDir.getAbsoluteFile());
+    }
+
+    public String getKey(File cachedFile) {
+        String root = cacheDir.getPath() + File.separator;
+        String path = cachedFile.getAbsolutePath();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("cachedFile is not inside the cache directory.");
+        }
+        return path.substring(root.length()).replace(File.separatorChar, '/');
+    }
+
+    public boolean contains(String key) { return state.index.containsKey(key); }
+
+    public boolean contains(File cachedFile) { return contains(getKey(cachedFile)); }
+
+    public Set<String> getKeys() { return Collections.unmodifiableSet(state.index.keySet()); }
+
+    /**
+     * Returns a read-only view of an entry's contents, backed by the mapped archive.
+     *
+     * @param key The entry key
+     * @return The entry contents, or null if the key is not in the archive
+     */
+    public ByteBuffer get(String key) {
+        State s = state;
+        Entry entry = s.index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        MappedByteBuffer m = s.mapped;
+        if (m == null || entry.offset + entry.length > m.capacity()) {
+            synchronized (this) {
+                s = state;
+                entry = s.index.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                m = remap(s);
+            }
+        }
+
+        ByteBuffer retVal = m.asReadOnlyBuffer();
+        retVal.position((int) entry.offset);
+        retVal.limit((int) (entry.offset + entry.length));
+        return retVal.slice();
+    }
+
+    public InputStream getInputStream(String key) {
+        ByteBuffer buffer = get(key);
+        return buffer != null ? new ByteBufferInputStream(buffer) : null;
+    }
+
+    public InputStream getInputStream(File cachedFile) { return getInputStream(getKey(cachedFile)); }
+
+    public synchronized void put(String key, byte[] data) throws IOException {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key cannot be null or empty.");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("data cannot be null.");
+        }
+        if (channel == null) {
+            throw new IOException("Archive is closed.");
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + keyBytes.length + data.length);
+        buffer.putInt(keyBytes.length).put(keyBytes).putInt(data.length).put(data);
+        buffer.flip();
+
+        long offset = length;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        length += buffer.capacity();
+
+        Entry old = state.index.put(key, new Entry(offset + 8 + keyBytes.length, data.length, buffer.capacity()));
+        if (old != null) {
+            liveRecordBytes -= old.recordLength;
+        }
+        liveRecordBytes += buffer.capacity();
+    }
+
+    public void put(File cachedFile, byte[] data) throws IOException { put(getKey(cachedFile), data); }
+
+    /**
+     * Rewrites the archive keeping only the newest record for each key.
+     * Records are read through the channel rather than the mapping, so an archive
+     * that was never read from can be compacted on any platform.
+     *
+     * @throws IOException If the archive could not be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        if (channel == null) {
+            throw new IOException("Archive is closed.");
+        }
+
+        File tmp = new File(cacheDir, FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            List<String> keys = new ArrayList<>(state.index.keySet());
+            Collections.sort(keys);
+            for (String key : keys) {
+                Entry entry = state.index.get(key);
+                ByteBuffer data = ByteBuffer.allocate(entry.length);
+                while (data.hasRemaining()) {
+                    if (channel.read(data, entry.offset + data.position()) < 0) {
+                        throw new EOFException("Archive ended inside a record: " + file);
+                    }
+                }
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(entry.length);
+                out.write(data.array());
+            }
+        }
+
+        // Drop our mapping first. Windows won't replace a file while it's mapped
+        state.mapped = null;
+        closeChannel();
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tmp.toPath());
+            open();
+            throw new IOException("Could not replace the archive, a reader may still have it mapped. Compact it with PomArchive.main while nothing else has it open.", ex);
+        }
+        open();
+    }
+
+    public synchronized long getWastedBytes() { return length - HEADER_LENGTH - liveRecordBytes; }
+
+    public synchronized void close() throws IOException {
+        archives.remove(cacheDir, this);
+        try {
+            closeChannel();
+        } finally {
+            releaseLock();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        liveRecordBytes = 0L;
+
+        if (channel.size() < HEADER_LENGTH) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            channel.truncate(0L);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            length = HEADER_LENGTH;
+            state = new State();
+            return;
+        }
+
+        // Scan record headers to build the index, stopping at a truncated tail. The
+        // archive is only mapped once something is read from it
+        State s = new State();
+        long size = channel.size();
+        long position = HEADER_LENGTH;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0L))));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            closeChannel();
+            throw new IOException("File is not a supported POM archive: " + file);
+        }
+        while (position + 4 <= size) {
+            int keyLength = in.readInt();
+            if (keyLength <= 0 || position + 4 + keyLength + 4 > size) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            in.readFully(keyBytes);
+            int dataLength = in.readInt();
+            long dataOffset = position + 4 + keyLength + 4;
+            if (dataLength < 0 || dataOffset + dataLength > size) {
+                break;
+            }
+            skipFully(in, dataLength);
+
+            Entry old = s.index.put(new String(keyBytes, StandardCharsets.UTF_8), new Entry(dataOffset, dataLength, 8 + keyLength + dataLength));
+            if (old != null) {
+                liveRecordBytes -= old.recordLength;
+            }
+            liveRecordBytes += 8 + keyLength + dataLength;
+            position = dataOffset + dataLength;
+        }
+
+        if (position < size) {
+            channel.truncate(position);
+        }
+        length = position;
+        state = s;
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private MappedByteBuffer remap(State s) {
+        if (channel == null) {
+            throw new IllegalStateException("Archive is closed.");
+        }
+
+        try {
+            if (s.mapped == null || s.mapped.capacity() < length) {
+                if (length > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Archive is too large to map, compact it.");
+                }
+                s.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, length);
+            }
+            return s.mapped;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void releaseLock() throws IOException {
+        if (lock != null) {
+            lock = null;
+            lockChannel.close(); // Releases the lock
+        }
+    }
+
+    /**
+     * Compacts the archives in the given cache directories.
+     *
+     * @param args The cache directories to compact
+     * @throws IOException If an archive could not be compacted
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PomArchive <cacheDir> [cacheDir...]");
+            return;
+        }
+
+        for (String arg : args) {
+            try (PomArchive archive = open(new File(arg))) {
+                long before = archive.file.length();
+                archive.compact();
+                System.out.println(archive.file + ": " + before + " -> " + archive.file.length() + " bytes, " + archive.state.index.size() + " entries");
+            }
+        }
+    }
+
+    private static class State {
+        private final ConcurrentMap<String, Entry> index = new ConcurrentHashMap<>();
+        private volatile MappedByteBuffer mapped = null;
+    }
+
+    private static class Entry {
+        private final long offset;
+        private final int length;
+        private final int recordLength;
+
+        private Entry(long offset, int length, int recordLength) {
+            this.offset = offset;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) { this.buffer = buffer; }
+
+        public int read() { return buffer.hasRemaining() ? buffer.get() & 0xFF : -1; }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        public int available() { return buffer.remaining(); }
+    }
+}
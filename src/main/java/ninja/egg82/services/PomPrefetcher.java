@@ -0,0 +1,207 @@
+package ninja.egg82.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import ninja.egg82.maven.PomModel;
+import ninja.egg82.maven.Repository;
+import ninja.egg82.maven.VersionRange;
+import ninja.egg82.utils.AsyncUtil;
+import ninja.egg82.utils.DownloadUtil;
+import ninja.egg82.utils.HTTPUtil;
+import ninja.egg82.utils.MavenUtil;
+
+/**
+ * Speculatively downloads POMs for a cache directory.
+ *
+ * As soon as a POM is parsed, its parent and every declared compile/runtime dependency
+ * (and imported BOM) with a plain, literal version are queued on the executor, before
+ * interpolation or mediation happen. When the resolver gets to one of them it waits for
+ * the queued download instead of starting its own, so network round trips overlap with
+ * parsing instead of adding up with graph depth. Anything that can't be known before
+ * interpolation (placeholders, ranges, snapshots, managed versions) is left to the resolver.
+ */
+public class PomPrefetcher implements AutoCloseable {
+    private static final ConcurrentMap<File, PomPrefetcher> prefetchers = new ConcurrentHashMap<>();
+
+    private final File cacheDir;
+    public File getCacheDir() { return cacheDir; }
+
+    private final Executor executor;
+
+    private final ConcurrentMap<File, Pending> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong queued = new AtomicLong(0L);
+    public long getQueuedCount() { return queued.get(); }
+
+    private final AtomicLong awaited = new AtomicLong(0L);
+    public long getAwaitedCount() { return awaited.get(); }
+
+    private PomPrefetcher(File cacheDir, Executor executor) {
+        this.cacheDir = cacheDir;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a prefetcher for the given cache directory, replacing any previous one.
+     *
+     * @param cacheDir The cache directory
+     * @param executor The executor to download on, ideally I/O-sized
+     * @return The registered prefetcher
+     */
+    public static PomPrefetcher open(File cacheDir, Executor executor) {
+        if (cacheDir == null) {
+            throw new IllegalArgumentException("cacheDir cannot be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        PomPrefetcher retVal = new PomPrefetcher(cacheDir.getAbsoluteFile(), executor);
+        prefetchers.put(retVal.cacheDir, retVal);
+        return retVal;
+    }
+
+    /**
+     * Returns the registered prefetcher for a cache directory.
+     *
+     * @param cacheDir The cache directory
+     * @return The prefetcher, or null if none is registered for the directory
+     */
+    public static PomPrefetcher get(File cacheDir) {
+        if (cacheDir == null || prefetchers.isEmpty()) {
+            return null;
+        }
+        return prefetchers.get(cacheDir.getAbsoluteFile());
+    }
+
+    /**
+     * Queues the parent and dependency POMs of a freshly parsed model.
+     *
+     * @param model The parsed model
+     * @param repositories The repositories the model's artifact is resolved from
+     */
+    public void prefetch(PomModel model, Collection<Repository> repositories) {
+        if (HTTPUtil.isOffline() || repositories.isEmpty()) {
+            return;
+        }
+
+        PomModel.Coordinates parent = model.getParent();
+        if (parent != null) {
+            queue(parent, repositories);
+        }
+        for (PomModel.Coordinates dependency : model.getDependencies()) {
+            String scope = dependency.getScope();
+            if ((scope == null || scope.equals("compile") || scope.equals("runtime")) && !"true".equals(dependency.getOptional())) {
+                queue(dependency, repositories);
+            }
+        }
+        for (PomModel.Coordinates managed : model.getManagedDependencies()) {
+            if ("import".equals(managed.getScope())) {
+                queue(managed, repositories);
+            }
+        }
+    }
+
+    /**
+     * Waits for a download of the given POM that is already running, if there is one.
+     * A download that is still queued is skipped instead, so a caller running on the same
+     * executor can't wait on work stuck behind it. Failures are ignored; the caller fetches
+     * the POM itself afterwards if it is still missing.
+     *
+     * @param pomFile The cached POM file the caller is about to read
+     */
+    public void await(File pomFile) {
+        Pending pending = inFlight.get(pomFile);
+        if (pending != null && !pending.claimed.compareAndSet(false, true)) {
+            awaited.incrementAndGet();
+            pending.done.join();
+        }
+    }
+
+    public void close() { prefetchers.remove(cacheDir, this); }
+
+    private void queue(PomModel.Coordinates coordinates, Collection<Repository> repositories) {
+        String groupId = trim(coordinates.getGroupId());
+        String artifactId = trim(coordinates.getArtifactId());
+        String version = trim(coordinates.getVersion());
+        if (!isLiteral(groupId) || !isLiteral(artifactId) || !isLiteral(version) || !isPlainVersion(version)) {
+            return;
+        }
+
+        File pomFile = MavenUtil.getCachePom(cacheDir, groupId, artifactId, version);
+        if (MavenUtil.hasCachePom(pomFile, cacheDir) || MavenUtil.getCacheGoneMarker(pomFile).exists()) {
+            return;
+        }
+
+        Pending pending = new Pending();
+        if (inFlight.putIfAbsent(pomFile, pending) != null) {
+            return;
+        }
+        queued.incrementAndGet();
+
+        AsyncUtil.supplyAsync(() -> {
+            if (pending.claimed.compareAndSet(false, true)) {
+                download(pomFile, getURLs(groupId, artifactId, version, repositories));
+            }
+            return null;
+        }, executor).whenComplete((v, ex) -> {
+            inFlight.remove(pomFile, pending);
+            pending.done.complete(null); // Speculative, the resolver reports any real failure
+        });
+    }
+
+    private void download(File pomFile, List<URL> urls) throws IOException {
+        if (MavenUtil.hasCachePom(pomFile, cacheDir)) {
+            return;
+        }
+
+        PomArchive archive = PomArchive.get(cacheDir);
+        if (archive == null) {
+            DownloadUtil.downloadFile(pomFile, urls);
+            return;
+        }
+
+        byte[] data = HTTPUtil.getBytes(urls);
+        if (!archive.contains(pomFile)) {
+            archive.put(pomFile, data);
+        }
+    }
+
+    private static List<URL> getURLs(String groupId, String artifactId, String version, Collection<Repository> repositories) throws MalformedURLException, UnsupportedEncodingException {
+        String encoded = URLEncoder.encode(version, "UTF-8");
+        String path = groupId.replace('.', '/') + "/" + artifactId + "/" + encoded + "/" + artifactId + "-" + encoded + ".pom";
+
+        // Same order as Artifact's candidate URIs
+        List<URL> retVal = new ArrayList<>();
+        for (Repository repository : repositories) {
+            for (String proxy : repository.getProxies()) {
+                retVal.add(new URL(proxy + path));
+            }
+            retVal.add(new URL(repository.getURL() + path));
+        }
+        return retVal;
+    }
+
+    private static class Pending {
+        // Whoever sets this first does the download: the queued task, or a resolver that got there before it started
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+    }
+
+    private static String trim(String text) { return text != null ? text.trim() : null; }
+
+    private static boolean isLiteral(String text) { return text != null && !text.isEmpty() && !text.contains("${"); }
+
+    private static boolean isPlainVersion(String version) {
+        String upper = version.toUpperCase(Locale.ROOT);
+        return !VersionRange.isRange(version) && !upper.endsWith("-SNAPSHOT") && !upper.endsWith("-LATEST") && !upper.equals("LATEST") && !upper.equals("RELEASE");
+    }
+}
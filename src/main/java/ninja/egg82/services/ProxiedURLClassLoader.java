@@ -1,77 +1,190 @@
 package ninja.egg82.services;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
 import java.util.regex.Pattern;
 
 public class ProxiedURLClassLoader extends URLClassLoader {
-    private static final Method FIND_METHOD;
+    private static final MethodHandle FIND_CLASS = getFindClass();
+    private static final int MAX_CACHED_MISSES = 4096;
 
     static {
-        try {
-            FIND_METHOD = ClassLoader.class.getDeclaredMethod("findClass", String.class);
-            FIND_METHOD.setAccessible(true);
-        } catch (NoSuchMethodException e) {
-            throw new ExceptionInInitializerError(e);
-        }
-
         registerAsParallelCapable();
     }
 
     private ClassLoader parent;
     private ClassLoader system;
     private boolean parentIsSystem;
-    private final Set<Pattern> excludedPatterns = new HashSet<>();
+    private final ExclusionMatcher exclusions;
+    private final ClassPathIndex index = new ClassPathIndex();
+
+    // Names known to be absent from each layer, so repeated probes skip the throw/catch.
+    // findClass only searches a loader's own URLs while loadClass delegates, so each has its own misses
+    private final Set<String> localMisses = ConcurrentHashMap.newKeySet();
+    private final Set<String> parentFindMisses = ConcurrentHashMap.newKeySet();
+    private final Set<String> parentLoadMisses = ConcurrentHashMap.newKeySet();
+    private final Set<String> systemFindMisses = ConcurrentHashMap.newKeySet();
+    private final Set<String> systemLoadMisses = ConcurrentHashMap.newKeySet();
+
+    private volatile Consumer<String> defineListener = null;
+    private volatile ClassLoadingStats stats = null;
 
     public ProxiedURLClassLoader(ClassLoader parent, String[] excludedPatterns) {
-        this(parent);
-        for (String pattern : excludedPatterns) {
-            this.excludedPatterns.add(Pattern.compile(pattern));
-        }
-        this.excludedPatterns.remove(null);
+        this(parent, compile(excludedPatterns));
     }
 
     public ProxiedURLClassLoader(ClassLoader parent, Pattern[] excludedPatterns) {
-        this(parent);
-        this.excludedPatterns.addAll(Arrays.asList(excludedPatterns));
-        this.excludedPatterns.remove(null);
+        this(parent, new HashSet<>(Arrays.asList(excludedPatterns)));
     }
 
     public ProxiedURLClassLoader(ClassLoader parent) {
+        this(parent, Collections.emptySet());
+    }
+
+    private ProxiedURLClassLoader(ClassLoader parent, Set<Pattern> excludedPatterns) {
         super(new URL[0]);
         this.parent = parent;
         system = getSystemClassLoader();
         parentIsSystem = parent == system;
+        exclusions = new ExclusionMatcher(excludedPatterns);
+    }
+
+    private static Set<Pattern> compile(String[] patterns) {
+        Set<Pattern> retVal = new HashSet<>();
+        for (String pattern : patterns) {
+            retVal.add(Pattern.compile(pattern));
+        }
+        return retVal;
+    }
+
+    @Override
+    public void addURL(URL url) { addURLs(Collections.singletonList(url)); }
+
+    /**
+     * Appends several URLs in order, indexing them as one batch.
+     *
+     * @param urls The URLs to add
+     */
+    public void addURLs(Collection<URL> urls) {
+        // Index first, or a complete index would skip the new jars' packages until it caught up
+        index.addAll(urls);
+        for (URL url : urls) {
+            super.addURL(url);
+        }
+        clearLookupCache();
+    }
+
+    /**
+     * Returns this loader's stats, or null if they aren't being collected.
+     *
+     * @return The stats
+     */
+    public ClassLoadingStats getStats() { return stats; }
+
+    /**
+     * Starts collecting stats, if not already.
+     *
+     * @return The stats being collected
+     */
+    public synchronized ClassLoadingStats enableStats() {
+        if (stats == null) {
+            stats = new ClassLoadingStats();
+        }
+        return stats;
+    }
+
+    public void disableStats() { stats = null; }
+
+    /**
+     * Sets a listener that is handed the name of every class this loader defines
+     * from its own URLs, e.g. {@link ClassDataSharing#record(String)}.
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setDefineListener(Consumer<String> listener) { this.defineListener = listener; }
+
+    /**
+     * Forgets which classes were missing from each layer. This happens automatically
+     * when URLs are added to this loader, but should be called if the parent's
+     * class path changes.
+     */
+    public void clearLookupCache() {
+        localMisses.clear();
+        parentFindMisses.clear();
+        parentLoadMisses.clear();
+        systemFindMisses.clear();
+        systemLoadMisses.clear();
     }
 
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
+        ClassLoadingStats s = stats;
+
         if (!isExcluded(name)) {
             // Find in local
-            try {
-                return super.findClass(name);
-            } catch (ClassNotFoundException | SecurityException ignored) { }
+            Class<?> clazz = findLocalClass(name);
+            if (clazz != null) {
+                return clazz;
+            }
         }
 
         // Find in parent
-        try {
-            return (Class<?>) FIND_METHOD.invoke(parent, name);
-        } catch (InvocationTargetException | IllegalAccessException ignored) { }
+        if (!parentFindMisses.contains(name)) {
+            long start = s != null ? System.nanoTime() : 0L;
+            boolean hit = false;
+            try {
+                Class<?> clazz = findIn(parent, name);
+                hit = true;
+                return clazz;
+            } catch (ClassNotFoundException ignored) {
+                addMiss(parentFindMisses, name);
+            } catch (RuntimeException | LinkageError ignored) {
+            } finally {
+                if (s != null) {
+                    s.record(ClassLoadingStats.Layer.PARENT, hit, System.nanoTime() - start);
+                }
+            }
+        } else if (s != null) {
+            s.record(ClassLoadingStats.Layer.PARENT, false, 0L);
+        }
 
         // Find in system (JVM, classpath, etc)
         if (system != null && !parentIsSystem) {
+            if (systemFindMisses.contains(name)) {
+                if (s != null) {
+                    s.record(ClassLoadingStats.Layer.SYSTEM, false, 0L);
+                }
+                throw new ClassNotFoundException(name);
+            }
+
+            long start = s != null ? System.nanoTime() : 0L;
+            boolean hit = false;
             try {
-                return (Class<?>) FIND_METHOD.invoke(system, name);
-            } catch (InvocationTargetException ex) {
-                if (ex.getCause() instanceof ClassNotFoundException) {
-                    throw (ClassNotFoundException) ex.getCause();
+                Class<?> clazz = findIn(system, name);
+                hit = true;
+                return clazz;
+            } catch (ClassNotFoundException ex) {
+                addMiss(systemFindMisses, name);
+                throw ex;
+            } catch (RuntimeException | LinkageError ignored) {
+            } finally {
+                if (s != null) {
+                    s.record(ClassLoadingStats.Layer.SYSTEM, hit, System.nanoTime() - start);
                 }
-            } catch (IllegalAccessException ignored) { }
+            }
         }
 
         throw new ClassNotFoundException(name);
@@ -80,26 +193,47 @@ public class ProxiedURLClassLoader extends URLClassLoader {
     @Override
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
         synchronized (getClassLoadingLock(name)) {
+            ClassLoadingStats s = stats;
+
             // Check if class has been loaded
             Class<?> clazz = findLoadedClass(name);
 
             // Load in local
             if (clazz == null && !isExcluded(name)) {
-                try {
-                    clazz = super.findClass(name);
-                } catch (ClassNotFoundException | SecurityException ignored) { }
+                clazz = findLocalClass(name);
             }
 
             // Load in parent
             if (clazz == null) {
-                try {
-                    clazz = parent.loadClass(name);
-                } catch (ClassNotFoundException | SecurityException ignored) { }
+                long start = s != null ? System.nanoTime() : 0L;
+                if (!parentLoadMisses.contains(name)) {
+                    try {
+                        clazz = parent.loadClass(name);
+                    } catch (ClassNotFoundException ignored) {
+                        addMiss(parentLoadMisses, name);
+                    } catch (SecurityException ignored) { }
+                }
+                if (s != null) {
+                    s.record(ClassLoadingStats.Layer.PARENT, clazz != null, System.nanoTime() - start);
+                }
             }
 
             // Load in system (JVM, classpath, etc)
             if (clazz == null && system != null && !parentIsSystem) {
-                clazz = system.loadClass(name); // We want exceptions to be thrown, here. No try/catch
+                long start = s != null ? System.nanoTime() : 0L;
+                try {
+                    if (systemLoadMisses.contains(name)) {
+                        throw new ClassNotFoundException(name);
+                    }
+                    clazz = system.loadClass(name); // We want exceptions to be thrown, here
+                } catch (ClassNotFoundException ex) {
+                    addMiss(systemLoadMisses, name);
+                    throw ex;
+                } finally {
+                    if (s != null) {
+                        s.record(ClassLoadingStats.Layer.SYSTEM, clazz != null, System.nanoTime() - start);
+                    }
+                }
             }
 
             if (clazz == null) {
@@ -113,15 +247,117 @@ public class ProxiedURLClassLoader extends URLClassLoader {
         }
     }
 
+    private Class<?> findLocalClass(String name) {
+        ClassLoadingStats s = stats;
+        if (s == null) {
+            return lookupLocalClass(name);
+        }
+
+        long start = System.nanoTime();
+        Class<?> retVal = lookupLocalClass(name);
+        s.record(ClassLoadingStats.Layer.LOCAL, retVal != null, System.nanoTime() - start);
+        return retVal;
+    }
+
+    private Class<?> lookupLocalClass(String name) {
+        // Skip the walk over every jar for packages we know we don't have
+        if (index.isComplete() && !index.ownsPackage(ClassPathIndex.getPackageName(name))) {
+            return null;
+        }
+        if (localMisses.contains(name)) {
+            return null;
+        }
+
+        try {
+            Class<?> retVal = findOwnClass(name);
+            Consumer<String> listener = defineListener;
+            if (listener != null) {
+                listener.accept(name);
+            }
+            return retVal;
+        } catch (ClassNotFoundException | SecurityException ignored) {
+            addMiss(localMisses, name);
+            return null;
+        }
+    }
+
+    /**
+     * Defines a class from this loader's own URLs.
+     *
+     * @param name The binary name of the class
+     * @return The defined class
+     * @throws ClassNotFoundException If none of this loader's URLs contain the class
+     */
+    protected Class<?> findOwnClass(String name) throws ClassNotFoundException {
+        Class<?> retVal = super.findClass(name);
+        ClassLoadingStats s = stats;
+        if (s != null) {
+            s.recordDefined(getClassFileLength(name));
+        }
+        return retVal;
+    }
+
+    private long getClassFileLength(String name) {
+        // URLClassLoader doesn't hand out the bytes it defined, so ask the entry it read them from
+        URL url = super.findResource(name.replace('.', '/').concat(".class"));
+        if (url == null) {
+            return 0L;
+        }
+
+        try {
+            if ("file".equalsIgnoreCase(url.getProtocol())) {
+                return new File(url.toURI()).length();
+            }
+            URLConnection conn = url.openConnection();
+            if (conn instanceof JarURLConnection) {
+                JarEntry entry = ((JarURLConnection) conn).getJarEntry();
+                return entry != null ? Math.max(0L, entry.getSize()) : 0L;
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException ignored) { }
+        return 0L;
+    }
+
+    private static Class<?> findIn(ClassLoader loader, String name) throws ClassNotFoundException {
+        if (FIND_CLASS == null) {
+            return loader.loadClass(name);
+        }
+
+        try {
+            return (Class<?>) FIND_CLASS.invokeExact(loader, name);
+        } catch (ClassNotFoundException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new ClassNotFoundException(name, ex);
+        }
+    }
+
+    private static MethodHandle getFindClass() {
+        try {
+            Method method = ClassLoader.class.getDeclaredMethod("findClass", String.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ignored) {
+            // java.lang isn't open to us (Java 16+ without --add-opens), so delegate through loadClass instead
+            return null;
+        }
+    }
+
+    private static void addMiss(Set<String> misses, String name) {
+        if (misses.size() >= MAX_CACHED_MISSES) {
+            misses.clear();
+        }
+        misses.add(name);
+    }
+
     private boolean isExcluded(String name) {
-        if (name != null) {
-            for (Pattern p : excludedPatterns) {
-                if (p.matcher(name).matches()) {
-                    return true;
-                }
+        boolean retVal = exclusions.isExcluded(name);
+        if (retVal) {
+            ClassLoadingStats s = stats;
+            if (s != null) {
+                s.recordExclusion();
             }
         }
-        return false;
+        return retVal;
     }
 
     @Override
@@ -144,45 +380,39 @@ public class ProxiedURLClassLoader extends URLClassLoader {
 
     @Override
     public Enumeration<URL> getResources(String name) throws IOException {
-        List<URL> urls = new ArrayList<>();
+        // Each layer's enumeration is itself lazy, so nothing is walked until asked for
+        List<Enumeration<URL>> layers = new ArrayList<>(3);
 
         // Get local
-        Enumeration<URL> enums = findResources(name);
-        if (enums != null) {
-            while (enums.hasMoreElements()) {
-                urls.add(enums.nextElement());
-            }
-        }
+        layers.add(findResources(name));
 
         // Get parent
         if (parent != null) {
-            enums = parent.getResources(name);
-            if (enums != null) {
-                while (enums.hasMoreElements()) {
-                    urls.add(enums.nextElement());
-                }
-            }
+            layers.add(parent.getResources(name));
         }
 
         // Get system (JVM, classpath, etc)
         if (system != null && !parentIsSystem) {
-            enums = system.getResources(name);
-            if (enums != null) {
-                while (enums.hasMoreElements()) {
-                    urls.add(enums.nextElement());
-                }
-            }
+            layers.add(system.getResources(name));
         }
 
-        return new Enumeration<URL>() {
-            Iterator<URL> i = urls.iterator();
-            public boolean hasMoreElements() {
-                return i.hasNext();
-            }
-            public URL nextElement() {
-                return i.next();
-            }
-        };
+        return new CompoundEnumeration(layers);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (name != null && index.isComplete() && !index.ownsResource(name)) {
+            return null;
+        }
+        return super.findResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (name != null && index.isComplete() && !index.ownsResource(name)) {
+            return Collections.emptyEnumeration();
+        }
+        return super.findResources(name);
     }
 
     @Override
@@ -193,4 +423,29 @@ public class ProxiedURLClassLoader extends URLClassLoader {
         } catch (IOException ignored) {}
         return null;
     }
+
+    private static class CompoundEnumeration implements Enumeration<URL> {
+        private final List<Enumeration<URL>> layers;
+        private int current = 0;
+
+        private CompoundEnumeration(List<Enumeration<URL>> layers) { this.layers = layers; }
+
+        public boolean hasMoreElements() {
+            while (current < layers.size()) {
+                Enumeration<URL> e = layers.get(current);
+                if (e != null && e.hasMoreElements()) {
+                    return true;
+                }
+                current++;
+            }
+            return false;
+        }
+
+        public URL nextElement() {
+            if (!hasMoreElements()) {
+                throw new NoSuchElementException();
+            }
+            return layers.get(current).nextElement();
+        }
+    }
 }
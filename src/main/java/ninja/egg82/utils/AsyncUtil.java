@@ -0,0 +1,63 @@
+package ninja.egg82.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import ninja.egg82.maven.ResolutionContext;
+
+public class AsyncUtil {
+    private AsyncUtil() {}
+
+    @FunctionalInterface
+    public interface ThrowingSupplier<T> {
+        T get() throws Exception;
+    }
+
+    /**
+     * Like {@link CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)}, but the
+     * supplier may throw checked exceptions. The future completes exceptionally with the exception
+     * itself rather than a wrapper, so callers can still tell IOExceptions apart.
+     * The calling thread's {@link ResolutionContext} is carried over to the task.
+     *
+     * @param supplier The work to run
+     * @param executor The executor to run it on
+     * @param <T> The result type
+     * @return A future completed with the supplier's result
+     */
+    public static <T> CompletableFuture<T> supplyAsync(ThrowingSupplier<T> supplier, Executor executor) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("supplier cannot be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        ResolutionContext context = ResolutionContext.current();
+        CompletableFuture<T> retVal = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (context == null) {
+                    complete(retVal, supplier);
+                    return;
+                }
+                ResolutionContext.Handle handle = context.enter();
+                try {
+                    complete(retVal, supplier);
+                } finally {
+                    handle.close();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            retVal.completeExceptionally(ex);
+        }
+        return retVal;
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, ThrowingSupplier<T> supplier) {
+        try {
+            future.complete(supplier.get());
+        } catch (Throwable ex) {
+            future.completeExceptionally(ex);
+        }
+    }
+}
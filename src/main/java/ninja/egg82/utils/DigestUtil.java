@@ -0,0 +1,44 @@
+package ninja.egg82.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+public class DigestUtil {
+    private DigestUtil() {}
+
+    /**
+     * Returns a SHA-256 hex digest identifying an ordered set of files.
+     * Path, size and mtime are enough to notice a changed set without hashing every file.
+     *
+     * @param files The files, in order
+     * @return The digest
+     * @throws IOException If SHA-256 is not available
+     */
+    public static String getDigest(List<File> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available.", ex);
+        }
+
+        for (File file : files) {
+            digest.update(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(file.length()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(file.lastModified()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+
+        StringBuilder retVal = new StringBuilder();
+        for (byte b : digest.digest()) {
+            retVal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return retVal.toString();
+    }
+}
@@ -6,18 +6,23 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import ninja.egg82.maven.ResolutionContext;
+import ninja.egg82.services.CacheMaintainer;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 
 public class DocumentUtil {
-    private static Map<URI, Document> documentCache = new HashMap<>();
+    private static final ConcurrentMap<URI, Document> documentCache = new ConcurrentHashMap<>();
+    // Per document, so unrelated downloads run in parallel. Not monitors, so virtual threads don't pin their carriers
+    private static final ConcurrentMap<URI, ReentrantLock> locks = new ConcurrentHashMap<>();
 
     private static final XPathFactory xPathFactory = XPathFactory.newInstance();
 
@@ -28,14 +33,36 @@ public class DocumentUtil {
         return (NodeList) xp.evaluate(xPath, document, XPathConstants.NODESET);
     }
 
-    public static synchronized Document getDocument(List<URL> urls) throws IOException {
+    public static Document getDocument(List<URL> urls) throws IOException {
+        Document retVal = getCachedDocument(urls);
+        if (retVal != null) {
+            return retVal;
+        }
+        if (urls.isEmpty()) {
+            return download(urls); // Throws the usual "no URLs" error
+        }
+
+        ReentrantLock lock = locks.computeIfAbsent(toURI(urls.get(0)), k -> new ReentrantLock());
+        ResolutionContext.lock(lock);
+        try {
+            retVal = getCachedDocument(urls);
+            return retVal != null ? retVal : download(urls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Document getCachedDocument(List<URL> urls) throws IOException {
         for (URL url : urls) {
             Document retVal = documentCache.get(toURI(url));
             if (retVal != null) {
                 return retVal;
             }
         }
+        return null;
+    }
 
+    private static Document download(List<URL> urls) throws IOException {
         try (InputStream stream = HTTPUtil.getInputStream(urls)) {
             Document doc = XMLUtil.getDocument(stream);
             for (URL url : urls) {
@@ -45,18 +72,23 @@ public class DocumentUtil {
         }
     }
 
-    public static synchronized Document getDocument(File file) throws IOException {
+    public static Document getDocument(File file) throws IOException {
+        CacheMaintainer.recordAccess(file);
+
         URI uri = file.toURI();
         Document retVal = documentCache.get(uri);
         if (retVal != null) {
             return retVal;
         }
 
+        // Parsing a local file twice is harmless, so there's nothing to lock
         Document doc = XMLUtil.getDocument(file);
-        documentCache.put(uri, doc);
-        return doc;
+        retVal = documentCache.putIfAbsent(uri, doc);
+        return retVal != null ? retVal : doc;
     }
 
+    public static void removeDocument(File file) { documentCache.remove(file.toURI()); }
+
     private static URI toURI(URL url) throws IOException {
         try {
             return url.toURI();
@@ -64,8 +96,6 @@ public class DocumentUtil {
             throw new IOException("Could not convert URL to URI.", ex);
         }
     }
-    
-    public static synchronized void clearDocumentCache() {
-        documentCache.clear();
-    }
+
+    public static void clearDocumentCache() { documentCache.clear(); }
 }
@@ -3,13 +3,19 @@ package ninja.egg82.utils;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import ninja.egg82.maven.ResolutionCancelledException;
+import ninja.egg82.services.CacheMaintainer;
 
 public class DownloadUtil {
     private DownloadUtil() {}
 
     public static File getOrDownloadFile(File output, List<URL> urls) throws IOException {
+        CacheMaintainer.recordAccess(output);
+
         if (output.exists() && output.isDirectory()) {
             Files.delete(output.toPath());
         }
@@ -17,23 +23,62 @@ public class DownloadUtil {
         createDirectory(output.getParentFile());
 
         if (!output.exists()) {
-            IOException lastEx = null;
-            for (URL url : urls) {
-                try {
-                    HTTPUtil.downloadFile(url, output);
-                    return output;
-                } catch (IOException ex) {
-                    lastEx = ex;
+            // Other threads may be reading the same cache, so they only ever see a complete file
+            File tmp = File.createTempFile(output.getName() + ".", ".tmp", output.getParentFile());
+            try {
+                IOException lastEx = null;
+                for (URL url : urls) {
+                    try {
+                        HTTPUtil.downloadFile(url, tmp);
+                        move(tmp, output);
+                        return output;
+                    } catch (ResolutionCancelledException ex) {
+                        throw ex;
+                    } catch (IOException ex) {
+                        lastEx = ex;
+                    }
                 }
-            }
-            if (lastEx != null) {
-                throw new IOException("Could not download file from URLs provided.", lastEx);
+                if (lastEx != null) {
+                    throw new IOException("Could not download file from URLs provided.", lastEx);
+                }
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
             }
         }
 
         return output;
     }
 
+    /**
+     * Downloads a file, replacing any existing copy only once the download completes.
+     *
+     * @param output The file to write
+     * @param urls The URLs to try, in order
+     * @return The output file
+     * @throws IOException If the file could not be downloaded from any URL
+     */
+    public static File downloadFile(File output, List<URL> urls) throws IOException {
+        createDirectory(output.getParentFile());
+
+        File tmp = File.createTempFile(output.getName() + ".", ".tmp", output.getParentFile());
+        try {
+            HTTPUtil.downloadFile(urls, tmp);
+            move(tmp, output);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        CacheMaintainer.recordAccess(output);
+        return output;
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ignored) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static boolean hasFile(File file) {
         if (file == null) {
             return false;
@@ -68,7 +113,8 @@ public class DownloadUtil {
                 return;
             }
         }
-        if (!file.mkdirs()) {
+        // Another thread may have created it in the meantime
+        if (!file.mkdirs() && !file.isDirectory()) {
             throw new IOException("Could not create directory structure.");
         }
     }
@@ -0,0 +1,32 @@
+package ninja.egg82.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ExecutorUtil {
+    private ExecutorUtil() {}
+
+    /**
+     * Creates an executor for the async resolution API. On this runtime it is a fixed pool
+     * of daemon threads, so no more than the given number of requests are ever in flight.
+     * On Java 21 and newer every task runs on its own virtual thread instead.
+     *
+     * @param maxConcurrentRequests The most tasks allowed to run at once
+     * @return A new executor, which the caller is responsible for shutting down
+     */
+    public static ExecutorService newResolutionExecutor(int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be greater than 0.");
+        }
+
+        AtomicInteger counter = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(maxConcurrentRequests, r -> {
+            Thread retVal = new Thread(r, "dep-downloader-" + counter.getAndIncrement());
+            retVal.setDaemon(true);
+            return retVal;
+        });
+    }
+
+    public static boolean usesVirtualThreads() { return false; }
+}
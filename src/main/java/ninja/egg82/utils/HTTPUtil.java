@@ -8,10 +8,26 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import ninja.egg82.maven.ResolutionCancelledException;
+import ninja.egg82.maven.ResolutionContext;
 
 public class HTTPUtil {
+    private static final int MAX_TIMEOUT = 5000;
+
+    private static volatile boolean offline = false;
+
     private HTTPUtil() {}
 
+    public static boolean isOffline() { return offline; }
+
+    /**
+     * Enables or disables offline mode. While offline, no connection is ever opened;
+     * every request fails immediately and remoteExists always returns false.
+     *
+     * @param offline true to forbid all network access
+     */
+    public static void setOffline(boolean offline) { HTTPUtil.offline = offline; }
+
     public static List<URL> toURLs(Collection<URI> uris) throws MalformedURLException {
         List<URL> retVal = new ArrayList<>();
         for (URI uri : uris) {
@@ -26,6 +42,7 @@ public class HTTPUtil {
             int bytesRead;
             while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1) {
                 fileOutputStream.write(dataBuffer, 0, bytesRead);
+                ResolutionContext.checkCurrent();
             }
         }
     }
@@ -36,15 +53,42 @@ public class HTTPUtil {
             int bytesRead;
             while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1) {
                 fileOutputStream.write(dataBuffer, 0, bytesRead);
+                ResolutionContext.checkCurrent();
             }
         }
     }
 
+    /**
+     * Downloads a small file into memory.
+     *
+     * @param urls The URLs to try, in order
+     * @return The file's contents
+     * @throws IOException If the file could not be downloaded from any URL
+     */
+    public static byte[] getBytes(List<URL> urls) throws IOException {
+        try (InputStream in = getInputStream(urls)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] dataBuffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = in.read(dataBuffer)) != -1) {
+                out.write(dataBuffer, 0, bytesRead);
+                ResolutionContext.checkCurrent();
+            }
+            return out.toByteArray();
+        }
+    }
+
     public static HttpURLConnection getConnection(URL url) throws IOException {
+        if (offline) {
+            throw new IOException("Offline mode is enabled, refusing to connect to " + url);
+        }
+
+        // Capped by the current ResolutionContext, if any
+        int timeout = ResolutionContext.getTimeout(MAX_TIMEOUT);
         HttpURLConnection conn = (HttpURLConnection) url.openConnection();
         conn.setInstanceFollowRedirects(true);
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
 
         int status;
         boolean redirect;
@@ -57,7 +101,10 @@ public class HTTPUtil {
                 String newUrl = conn.getHeaderField("Location");
                 String cookies = conn.getHeaderField("Set-Cookie");
 
+                timeout = ResolutionContext.getTimeout(MAX_TIMEOUT);
                 conn = (HttpURLConnection) new URL(newUrl).openConnection();
+                conn.setConnectTimeout(timeout);
+                conn.setReadTimeout(timeout);
                 conn.setRequestProperty("Cookie", cookies);
                 conn.addRequestProperty("Accept-Language", "en-US,en;q=0.8");
             }
@@ -75,6 +122,10 @@ public class HTTPUtil {
      * @throws IOException If all URLs errored, the last error presented
      */
     public static HttpURLConnection getConnection(List<URL> urls) throws IOException {
+        if (offline) {
+            throw new IOException("Offline mode is enabled, refusing to connect.");
+        }
+
         IOException lastEx = null;
         int lastStatus = -1;
         boolean is404 = false;
@@ -90,6 +141,8 @@ public class HTTPUtil {
                 } else {
                     is404 = true;
                 }
+            } catch (ResolutionCancelledException ex) {
+                throw ex;
             } catch (IOException ex) {
                 lastEx = ex;
             }
@@ -104,18 +157,60 @@ public class HTTPUtil {
         throw new IOException("Could not get connection from URLs provided.");
     }
 
-    public static boolean remoteExists(List<URL> urls) {
+    /**
+     * What a list of URLs said about a file.
+     */
+    public enum RemoteStatus {
+        /** One of the URLs presents the file */
+        FOUND,
+        /** Every URL answered 404 or 410, so the file is really gone rather than unreachable */
+        MISSING,
+        /** Not found, but at least one URL failed or gave some other answer */
+        UNKNOWN
+    }
+
+    /**
+     * Returns whether any of the URLs presents a file.
+     *
+     * @param urls The URLs to check, in order
+     * @return true if one of them exists
+     * @throws ResolutionCancelledException If the current ResolutionContext ran out, so a
+     *                                      missing answer isn't mistaken for a missing file
+     */
+    public static boolean remoteExists(List<URL> urls) throws ResolutionCancelledException { return getRemoteStatus(urls) == RemoteStatus.FOUND; }
+
+    /**
+     * Checks the URLs in order until one presents the file, noting along the way
+     * whether every one of them reported it missing.
+     *
+     * @param urls The URLs to check, in order
+     * @return What the URLs said about the file
+     * @throws ResolutionCancelledException If the current ResolutionContext ran out
+     */
+    public static RemoteStatus getRemoteStatus(List<URL> urls) throws ResolutionCancelledException {
+        if (offline || urls.isEmpty()) {
+            return RemoteStatus.UNKNOWN;
+        }
+
+        boolean missing = true;
         for (URL url : urls) {
             try {
                 HttpURLConnection conn = getConnection(url);
                 int status = conn.getResponseCode();
                 if ((status >= 200 && status < 300) || status == 304) {
-                    return true;
+                    return RemoteStatus.FOUND;
                 }
-            } catch (IOException ignored) { }
+                if (status != HttpURLConnection.HTTP_NOT_FOUND && status != HttpURLConnection.HTTP_GONE) {
+                    missing = false;
+                }
+            } catch (ResolutionCancelledException ex) {
+                throw ex;
+            } catch (IOException ignored) {
+                missing = false;
+            }
         }
 
-        return false;
+        return missing ? RemoteStatus.MISSING : RemoteStatus.UNKNOWN;
     }
 
     public static InputStream getInputStream(URL url) throws IOException {
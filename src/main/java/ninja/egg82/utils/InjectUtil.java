@@ -2,10 +2,16 @@ package ninja.egg82.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import ninja.egg82.services.ProxiedURLClassLoader;
 
 /**
  * Some of this code taken from LuckPerms
@@ -13,16 +19,7 @@ import java.net.URLClassLoader;
  */
 
 public class InjectUtil {
-    private static final Method ADD_URL_METHOD;
-
-    static {
-        try {
-            ADD_URL_METHOD = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
-            ADD_URL_METHOD.setAccessible(true);
-        } catch (NoSuchMethodException e) {
-            throw new ExceptionInInitializerError(e);
-        }
-    }
+    private static final MethodHandle ADD_URL = getAddURL();
 
     private InjectUtil() {}
 
@@ -34,13 +31,78 @@ public class InjectUtil {
             throw new IllegalArgumentException("classLoader cannot be null.");
         }
 
+        addURL(classLoader, toURL(file));
+    }
+
+    /**
+     * Injects several files in order. Every file is validated before any is added,
+     * and a {@link ProxiedURLClassLoader} indexes the whole batch at once.
+     *
+     * @param files The files to inject, in class path order
+     * @param classLoader The class loader to inject into
+     * @throws IOException If any file does not exist or is a directory
+     * @throws IllegalAccessException If the class loader can't be injected into on this JVM
+     * @throws InvocationTargetException If adding a URL failed
+     */
+    public static void injectFiles(Collection<File> files, URLClassLoader classLoader) throws IOException, IllegalAccessException, InvocationTargetException {
+        if (files == null) {
+            throw new IllegalArgumentException("files cannot be null.");
+        }
+        if (classLoader == null) {
+            throw new IllegalArgumentException("classLoader cannot be null.");
+        }
+
+        List<URL> urls = new ArrayList<>(files.size());
+        for (File file : files) {
+            if (file == null) {
+                throw new IllegalArgumentException("files cannot contain null.");
+            }
+            urls.add(toURL(file));
+        }
+
+        if (classLoader instanceof ProxiedURLClassLoader) {
+            ((ProxiedURLClassLoader) classLoader).addURLs(urls);
+            return;
+        }
+        for (URL url : urls) {
+            addURL(classLoader, url);
+        }
+    }
+
+    private static URL toURL(File file) throws IOException {
         if (file.exists() && file.isDirectory()) {
             throw new IOException("file is not a file.");
         }
         if (!file.exists()) {
             throw new IOException("file does not exist.");
         }
+        return file.toPath().toUri().toURL();
+    }
+
+    private static void addURL(URLClassLoader classLoader, URL url) throws IllegalAccessException, InvocationTargetException {
+        if (classLoader instanceof ProxiedURLClassLoader) {
+            ((ProxiedURLClassLoader) classLoader).addURL(url);
+            return;
+        }
+        if (ADD_URL == null) {
+            throw new IllegalAccessException("URLClassLoader.addURL is not accessible on this JVM. Use a ProxiedURLClassLoader or open java.net to this library.");
+        }
 
-        ADD_URL_METHOD.invoke(classLoader, file.toPath().toUri().toURL());
+        try {
+            ADD_URL.invokeExact(classLoader, url);
+        } catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
+    private static MethodHandle getAddURL() {
+        try {
+            Method method = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ignored) {
+            // java.net isn't open to us (Java 16+ without --add-opens), only ProxiedURLClassLoader can be injected
+            return null;
+        }
     }
 }
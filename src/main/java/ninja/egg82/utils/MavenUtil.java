@@ -2,33 +2,55 @@ package ninja.egg82.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.xml.xpath.XPathExpressionException;
 import ninja.egg82.maven.Artifact;
 import ninja.egg82.maven.ArtifactParent;
+import ninja.egg82.maven.Exclusion;
+import ninja.egg82.maven.MissingArtifactException;
+import ninja.egg82.maven.PomModel;
 import ninja.egg82.maven.Repository;
+import ninja.egg82.maven.ResolutionContext;
 import ninja.egg82.maven.Scope;
+import ninja.egg82.maven.UpdatePolicy;
+import ninja.egg82.maven.VersionRange;
+import ninja.egg82.services.PomArchive;
+import ninja.egg82.services.PomPrefetcher;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 public class MavenUtil {
+    private static final ConcurrentMap<File, PomModel> modelCache = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<File, Long> metadataAttempts = new ConcurrentHashMap<>();
+    // Archived metadata has no file timestamp, so the time it was fetched is kept next to it
+    private static final String METADATA_MODIFIED_SUFFIX = ".modified";
+    // Per metadata file, so unrelated refreshes don't wait on each other's downloads
+    private static final ConcurrentMap<File, ReentrantLock> metadataLocks = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, String> rangeCache = new ConcurrentHashMap<>();
+    private static final Set<Scope> ALL_SCOPES = Collections.unmodifiableSet(EnumSet.allOf(Scope.class));
+
     private MavenUtil() {}
 
     public static Map<String, String> getProperties(Artifact artifact) throws IOException, XPathExpressionException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(artifact), HTTPUtil.toURLs(artifact.getPomURIs()));
-        return fetchProperties(DocumentUtil.getDocument(pomFile));
+        return new HashMap<>(getPomModel(artifact).getProperties());
     }
 
     public static Map<String, String> getProperties(ArtifactParent parent) throws IOException, XPathExpressionException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(parent), HTTPUtil.toURLs(parent.getPomURIs()));
-        return fetchProperties(DocumentUtil.getDocument(pomFile));
+        return new HashMap<>(getPomModel(parent).getProperties());
     }
 
     private static Map<String, String> fetchProperties(Document document) throws XPathExpressionException {
@@ -61,60 +83,86 @@ public class MavenUtil {
         return retVal;
     }
 
-    public static List<Artifact> getDependencies(Artifact artifact) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(artifact), HTTPUtil.toURLs(artifact.getPomURIs()));
+    public static List<Artifact> getDependencies(Artifact artifact) throws URISyntaxException, IOException, XPathExpressionException, SAXException { return getDependencies(artifact, ALL_SCOPES); }
 
-        Set<Repository> repositories = getRepositories(artifact);
+    public static List<Artifact> getDependencies(Artifact artifact, Set<Scope> scopes) throws URISyntaxException, IOException, XPathExpressionException, SAXException { return getDependencies(artifact, scopes, artifact.isLazy()); }
 
-        List<Artifact> retVal = new ArrayList<>();
-        List<Artifact.Builder> builders = fetchHardDependencies(artifact.getParent(), DocumentUtil.getDocument(pomFile), artifact.getProperties(), artifact.getCacheDir());
+    public static List<Artifact> getDependencies(Artifact artifact, Set<Scope> scopes, boolean lazy) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        PomModel pom = getPomModel(artifact);
 
-        for (Artifact.Builder builder : builders) {
-            for (Repository repository : repositories) {
-                builder.addRepository(repository);
-            }
-            retVal.add(builder.build());
-        }
+        Set<Repository> repositories = getRepositories(artifact);
+
+        List<Artifact.Builder> builders = fetchDependencies(artifact.getParent(), pom.getDependencies(), artifact.getProperties(), artifact.getCacheDir(), artifact.getExclusions());
+        List<String> missing = new ArrayList<>();
+        List<Artifact> retVal = buildDependencies(builders, scopes, lazy, repositories, missing);
 
+        boolean unfiltered = artifact.getExclusions().isEmpty() && scopes.containsAll(ALL_SCOPES);
         ArtifactParent p = artifact.getParent();
         while (p != null) {
-            retVal.addAll(p.getHardDependencies());
+            try {
+                // The parent's cached list doesn't know about this artifact's exclusions or scopes
+                retVal.addAll(unfiltered ? p.getHardDependencies() : getHardDependencies(p, artifact.getExclusions(), scopes));
+            } catch (MissingArtifactException ex) {
+                missing.addAll(ex.getMissing());
+            }
             p = p.getParent();
         }
 
+        if (!missing.isEmpty()) {
+            throw new MissingArtifactException(missing);
+        }
         return retVal;
     }
 
     public static List<Artifact> getSoftDependencies(ArtifactParent parent) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(parent), HTTPUtil.toURLs(parent.getPomURIs()));
+        PomModel pom = getPomModel(parent);
 
         Set<Repository> repositories = getRepositories(parent);
 
-        List<Artifact> retVal = new ArrayList<>();
-        List<Artifact.Builder> builders = fetchSoftDependencies(parent.getParent(), DocumentUtil.getDocument(pomFile), parent.getProperties(), parent.getCacheDir());
+        List<Artifact.Builder> builders = fetchDependencies(parent.getParent(), pom.getManagedDependencies(), parent.getProperties(), parent.getCacheDir(), Collections.emptySet());
+        List<String> missing = new ArrayList<>();
+        List<Artifact> retVal = buildDependencies(builders, ALL_SCOPES, false, repositories, missing);
 
-        for (Artifact.Builder builder : builders) {
-            for (Repository repository : repositories) {
-                builder.addRepository(repository);
-            }
-            retVal.add(builder.build());
+        if (!missing.isEmpty()) {
+            throw new MissingArtifactException(missing);
         }
         return retVal;
     }
 
-    public static List<Artifact> getHardDependencies(ArtifactParent parent) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(parent), HTTPUtil.toURLs(parent.getPomURIs()));
+    public static List<Artifact> getHardDependencies(ArtifactParent parent) throws URISyntaxException, IOException, XPathExpressionException, SAXException { return getHardDependencies(parent, Collections.emptySet(), ALL_SCOPES); }
+
+    private static List<Artifact> getHardDependencies(ArtifactParent parent, Set<Exclusion> exclusions, Set<Scope> scopes) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        PomModel pom = getPomModel(parent);
 
         Set<Repository> repositories = getRepositories(parent);
 
-        List<Artifact> retVal = new ArrayList<>();
-        List<Artifact.Builder> builders = fetchHardDependencies(parent.getParent(), DocumentUtil.getDocument(pomFile), parent.getProperties(), parent.getCacheDir());
+        List<Artifact.Builder> builders = fetchDependencies(parent.getParent(), pom.getDependencies(), parent.getProperties(), parent.getCacheDir(), exclusions);
+        List<String> missing = new ArrayList<>();
+        List<Artifact> retVal = buildDependencies(builders, scopes, false, repositories, missing);
 
+        if (!missing.isEmpty()) {
+            throw new MissingArtifactException(missing);
+        }
+        return retVal;
+    }
+
+    private static List<Artifact> buildDependencies(List<Artifact.Builder> builders, Set<Scope> scopes, boolean lazy, Set<Repository> repositories, List<String> missing) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        List<Artifact> retVal = new ArrayList<>();
         for (Artifact.Builder builder : builders) {
+            if (!scopes.contains(builder.getScope())) {
+                continue; // Left as an unbuilt builder, so nothing is fetched for it
+            }
+            ResolutionContext.checkCurrent();
             for (Repository repository : repositories) {
                 builder.addRepository(repository);
             }
-            retVal.add(builder.build());
+            builder.lazy(lazy);
+            try {
+                retVal.add(builder.build());
+            } catch (MissingArtifactException ex) {
+                // Keep going so the caller gets every missing coordinate at once
+                missing.addAll(ex.getMissing());
+            }
         }
         return retVal;
     }
@@ -163,17 +211,10 @@ public class MavenUtil {
         return retVal;
     }
 
-    private static List<Artifact.Builder> fetchSoftDependencies(ArtifactParent parent, Document document, Map<String, String> properties, File cacheDir) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        return fetchDependencies(parent, DocumentUtil.getNodesByXPath(document, "/project/dependencyManagement/dependencies/dependency"), properties, cacheDir);
-    }
-
-    private static List<Artifact.Builder> fetchHardDependencies(ArtifactParent parent, Document document, Map<String, String> properties, File cacheDir) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        return fetchDependencies(parent, DocumentUtil.getNodesByXPath(document, "/project/dependencies/dependency"), properties, cacheDir);
-    }
-
-    private static List<Artifact.Builder> fetchDependencies(ArtifactParent parent, NodeList dependencyNodes, Map<String, String> properties, File cacheDir) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        List<Artifact.Builder> retVal = new ArrayList<>();
+    private static List<PomModel.Coordinates> fetchDependencies(Document document, String xPath) throws XPathExpressionException {
+        List<PomModel.Coordinates> retVal = new ArrayList<>();
 
+        NodeList dependencyNodes = DocumentUtil.getNodesByXPath(document, xPath);
         for (int i = 0; i < dependencyNodes.getLength(); i++) {
             Node dependencyNode = dependencyNodes.item(i);
             if (dependencyNode == null || dependencyNode.getNodeType() != Node.ELEMENT_NODE) {
@@ -184,6 +225,10 @@ public class MavenUtil {
             String artifactId = null;
             String version = null;
             String scope = null;
+            String classifier = null;
+            String type = null;
+            String optional = null;
+            List<Exclusion> exclusions = new ArrayList<>();
 
             NodeList childNodes = dependencyNode.getChildNodes();
             for (int j = 0; j < childNodes.getLength(); j++) {
@@ -192,6 +237,11 @@ public class MavenUtil {
                     continue;
                 }
 
+                if (childNode.getNodeName().equals("exclusions")) {
+                    fetchExclusions(childNode, exclusions);
+                    continue;
+                }
+
                 Node innerNode = childNode.getFirstChild();
                 if (innerNode == null || innerNode.getNodeType() != Node.TEXT_NODE) {
                     continue;
@@ -205,9 +255,67 @@ public class MavenUtil {
                     version = innerNode.getNodeValue();
                 } else if (childNode.getNodeName().equals("scope")) {
                     scope = innerNode.getNodeValue();
+                } else if (childNode.getNodeName().equals("classifier")) {
+                    classifier = innerNode.getNodeValue();
+                } else if (childNode.getNodeName().equals("type")) {
+                    type = innerNode.getNodeValue();
+                } else if (childNode.getNodeName().equals("optional")) {
+                    optional = innerNode.getNodeValue();
                 }
             }
 
+            retVal.add(new PomModel.Coordinates(groupId, artifactId, version, scope, classifier, type, optional, exclusions));
+        }
+
+        return retVal;
+    }
+
+    private static void fetchExclusions(Node exclusionsNode, List<Exclusion> exclusions) {
+        NodeList exclusionNodes = exclusionsNode.getChildNodes();
+        for (int i = 0; i < exclusionNodes.getLength(); i++) {
+            Node exclusionNode = exclusionNodes.item(i);
+            if (exclusionNode == null || exclusionNode.getNodeType() != Node.ELEMENT_NODE || !exclusionNode.getNodeName().equals("exclusion")) {
+                continue;
+            }
+
+            String groupId = null;
+            String artifactId = null;
+
+            NodeList childNodes = exclusionNode.getChildNodes();
+            for (int j = 0; j < childNodes.getLength(); j++) {
+                Node childNode = childNodes.item(j);
+                if (childNode == null || childNode.getNodeType() != Node.ELEMENT_NODE) {
+                    continue;
+                }
+
+                Node innerNode = childNode.getFirstChild();
+                if (innerNode == null || innerNode.getNodeType() != Node.TEXT_NODE) {
+                    continue;
+                }
+
+                if (childNode.getNodeName().equals("groupId")) {
+                    groupId = innerNode.getNodeValue().trim();
+                } else if (childNode.getNodeName().equals("artifactId")) {
+                    artifactId = innerNode.getNodeValue().trim();
+                }
+            }
+
+            if (groupId == null || groupId.isEmpty() || artifactId == null || artifactId.isEmpty()) {
+                continue;
+            }
+            exclusions.add(new Exclusion(groupId, artifactId));
+        }
+    }
+
+    private static List<Artifact.Builder> fetchDependencies(ArtifactParent parent, List<PomModel.Coordinates> dependencies, Map<String, String> properties, File cacheDir, Set<Exclusion> exclusions) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
+        List<Artifact.Builder> retVal = new ArrayList<>();
+
+        for (PomModel.Coordinates coordinates : dependencies) {
+            String groupId = coordinates.getGroupId();
+            String artifactId = coordinates.getArtifactId();
+            String version = coordinates.getVersion();
+            String scope = coordinates.getScope();
+
             if (version == null && parent != null) {
                 ArtifactParent p = parent;
                 while (p != null) {
@@ -244,26 +352,70 @@ public class MavenUtil {
                 continue;
             }
 
+            if (VersionRange.isRange(version) && !isValidRange(version)) {
+                continue;
+            }
+
+            groupId = groupId.replaceAll("\\s", "");
+            artifactId = artifactId.replaceAll("\\s", "");
+
+            // Optional dependencies are never transitive, and exclusions prune the whole subtree
+            if ("true".equalsIgnoreCase(trim(fillPlaceholders(coordinates.getOptional(), parent, properties))) || isExcluded(exclusions, groupId, artifactId)) {
+                continue;
+            }
+
             Scope scopeEnum = Scope.fromName(scope);
 
-            retVal.add(Artifact.builder(groupId.replaceAll("\\s", ""), artifactId.replaceAll("\\s", ""), version.replaceAll("\\s", ""), cacheDir, scopeEnum));
+            Artifact.Builder builder = Artifact.builder(groupId, artifactId, version.replaceAll("\\s", ""), cacheDir, scopeEnum)
+                    .classifier(trim(fillPlaceholders(coordinates.getClassifier(), parent, properties)))
+                    .addExclusions(exclusions);
+            String type = trim(fillPlaceholders(coordinates.getType(), parent, properties));
+            if (type != null && !type.isEmpty()) {
+                builder.type(type);
+            }
+            for (Exclusion exclusion : coordinates.getExclusions()) {
+                String exclusionGroupId = fillPlaceholders(exclusion.getGroupId(), parent, properties);
+                String exclusionArtifactId = fillPlaceholders(exclusion.getArtifactId(), parent, properties);
+                if (exclusionGroupId != null && !exclusionGroupId.isEmpty() && exclusionArtifactId != null && !exclusionArtifactId.isEmpty()) {
+                    builder.addExclusion(new Exclusion(exclusionGroupId, exclusionArtifactId));
+                }
+            }
+            retVal.add(builder);
         }
 
         return retVal;
     }
 
+    private static boolean isExcluded(Set<Exclusion> exclusions, String groupId, String artifactId) {
+        for (Exclusion exclusion : exclusions) {
+            if (exclusion.matches(groupId, artifactId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String trim(String text) { return text != null ? text.trim() : null; }
+
+    private static boolean isValidRange(String range) {
+        try {
+            VersionRange.parse(range);
+            return true;
+        } catch (IllegalArgumentException ignored) {
+            return false;
+        }
+    }
+
     public static List<Repository> getDeclaredRepositories(Artifact artifact) throws IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(artifact), HTTPUtil.toURLs(artifact.getPomURIs()));
-        return fetchDeclaredRepositories(DocumentUtil.getDocument(pomFile), artifact.getRepositories(), artifact.getParent(), artifact.getProperties());
+        return fetchDeclaredRepositories(getPomModel(artifact).getRepositoryURLs(), artifact.getRepositories(), artifact.getParent(), artifact.getProperties());
     }
 
     public static List<Repository> getDeclaredRepositories(ArtifactParent parent) throws IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(parent), HTTPUtil.toURLs(parent.getPomURIs()));
-        return fetchDeclaredRepositories(DocumentUtil.getDocument(pomFile), parent.getRepositories(), parent.getParent(), parent.getProperties());
+        return fetchDeclaredRepositories(getPomModel(parent).getRepositoryURLs(), parent.getRepositories(), parent.getParent(), parent.getProperties());
     }
 
-    private static List<Repository> fetchDeclaredRepositories(Document document, Set<Repository> repositories, ArtifactParent parent, Map<String, String> properties) throws XPathExpressionException, SAXException {
-        List<Repository> retVal = new ArrayList<>();
+    private static List<String> fetchRepositoryURLs(Document document) throws XPathExpressionException {
+        List<String> retVal = new ArrayList<>();
 
         NodeList repositoryNodes = DocumentUtil.getNodesByXPath(document, "/project/repositories/repository");
         for (int i = 0; i < repositoryNodes.getLength(); i++) {
@@ -291,6 +443,16 @@ public class MavenUtil {
                 }
             }
 
+            retVal.add(url);
+        }
+
+        return retVal;
+    }
+
+    private static List<Repository> fetchDeclaredRepositories(List<String> urls, Set<Repository> repositories, ArtifactParent parent, Map<String, String> properties) throws SAXException {
+        List<Repository> retVal = new ArrayList<>();
+
+        for (String url : urls) {
             url = fillPlaceholders(url, parent, properties);
 
             if (url == null) {
@@ -331,8 +493,7 @@ public class MavenUtil {
     }
 
     public static ArtifactParent getParent(Artifact artifact) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(artifact), HTTPUtil.toURLs(artifact.getPomURIs()));
-        ArtifactParent.Builder retVal = fetchArtifactParent(DocumentUtil.getDocument(pomFile), artifact.getProperties(), artifact.getCacheDir());
+        ArtifactParent.Builder retVal = fetchArtifactParent(getPomModel(artifact).getParent(), artifact.getProperties(), artifact.getCacheDir());
         if (retVal == null) {
             return null;
         }
@@ -344,8 +505,7 @@ public class MavenUtil {
     }
 
     public static ArtifactParent getParent(ArtifactParent parent) throws URISyntaxException, IOException, XPathExpressionException, SAXException {
-        File pomFile = DownloadUtil.getOrDownloadFile(getCachePom(parent), HTTPUtil.toURLs(parent.getPomURIs()));
-        ArtifactParent.Builder retVal = fetchArtifactParent(DocumentUtil.getDocument(pomFile), parent.getProperties(), parent.getCacheDir());
+        ArtifactParent.Builder retVal = fetchArtifactParent(getPomModel(parent).getParent(), parent.getProperties(), parent.getCacheDir());
         if (retVal == null) {
             return null;
         }
@@ -356,7 +516,7 @@ public class MavenUtil {
         return retVal.build();
     }
 
-    private static ArtifactParent.Builder fetchArtifactParent(Document document, Map<String, String> properties, File cacheDir) throws XPathExpressionException, SAXException {
+    private static PomModel.Coordinates fetchParent(Document document) throws XPathExpressionException, SAXException {
         NodeList parentNodes = DocumentUtil.getNodesByXPath(document, "/project/parent");
         if (parentNodes.getLength() == 0) {
             return null;
@@ -392,6 +552,18 @@ public class MavenUtil {
             }
         }
 
+        return new PomModel.Coordinates(groupId, artifactId, version, null);
+    }
+
+    private static ArtifactParent.Builder fetchArtifactParent(PomModel.Coordinates parent, Map<String, String> properties, File cacheDir) throws SAXException {
+        if (parent == null) {
+            return null;
+        }
+
+        String groupId = parent.getGroupId();
+        String artifactId = parent.getArtifactId();
+        String version = parent.getVersion();
+
         groupId = fillPlaceholders(groupId, null, properties);
         artifactId = fillPlaceholders(artifactId, null, properties);
         version = fillPlaceholders(version, null, properties);
@@ -404,11 +576,11 @@ public class MavenUtil {
     }
 
     public static String getLatestVersion(Artifact artifact) throws IOException, XPathExpressionException, SAXException {
-        return fetchLatestVersion(DocumentUtil.getDocument(getVersionMetadataURLs(artifact)));
+        return fetchLatestVersion(getMetadata(artifact.getCacheDir(), getCacheVersionMetadata(artifact), getVersionMetadataURLs(artifact), artifact.toString(), getUpdatePolicy(artifact)));
     }
 
     public static String getLatestVersion(ArtifactParent parent) throws IOException, XPathExpressionException, SAXException {
-        return fetchLatestVersion(DocumentUtil.getDocument(getVersionMetadataURLs(parent)));
+        return fetchLatestVersion(getMetadata(parent.getCacheDir(), getCacheVersionMetadata(parent), getVersionMetadataURLs(parent), parent.toString(), getUpdatePolicy(parent)));
     }
 
     private static String fetchLatestVersion(Document document) throws XPathExpressionException, SAXException {
@@ -431,11 +603,11 @@ public class MavenUtil {
     }
 
     public static String getReleaseVersion(Artifact artifact) throws IOException, XPathExpressionException, SAXException {
-        return fetchReleaseVersion(DocumentUtil.getDocument(getVersionMetadataURLs(artifact)));
+        return fetchReleaseVersion(getMetadata(artifact.getCacheDir(), getCacheVersionMetadata(artifact), getVersionMetadataURLs(artifact), artifact.toString(), getUpdatePolicy(artifact)));
     }
 
     public static String getReleaseVersion(ArtifactParent parent) throws IOException, XPathExpressionException, SAXException {
-        return fetchReleaseVersion(DocumentUtil.getDocument(getVersionMetadataURLs(parent)));
+        return fetchReleaseVersion(getMetadata(parent.getCacheDir(), getCacheVersionMetadata(parent), getVersionMetadataURLs(parent), parent.toString(), getUpdatePolicy(parent)));
     }
 
     private static String fetchReleaseVersion(Document document) throws XPathExpressionException, SAXException {
@@ -457,12 +629,61 @@ public class MavenUtil {
         return innerNode.getNodeValue().replaceAll("\\s", "");
     }
 
+    /**
+     * Resolves a version range to the best matching version in the artifact's metadata.
+     * The choice is remembered for the rest of the run.
+     *
+     * @param artifact The artifact, whose version is a range
+     * @return The chosen version
+     * @throws IOException If the metadata could not be fetched
+     * @throws XPathExpressionException If the metadata could not be read
+     * @throws SAXException If no version in the metadata matches the range
+     */
+    public static String getRangeVersion(Artifact artifact) throws IOException, XPathExpressionException, SAXException {
+        String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion();
+        String retVal = rangeCache.get(key);
+        if (retVal != null) {
+            return retVal;
+        }
+
+        retVal = fetchRangeVersion(getMetadata(artifact.getCacheDir(), getCacheVersionMetadata(artifact), getVersionMetadataURLs(artifact), artifact.toString(), getUpdatePolicy(artifact)), VersionRange.parse(artifact.getVersion()));
+        rangeCache.put(key, retVal);
+        return retVal;
+    }
+
+    public static void clearRangeCache() { rangeCache.clear(); }
+
+    private static String fetchRangeVersion(Document document, VersionRange range) throws XPathExpressionException, SAXException {
+        List<String> versions = new ArrayList<>();
+
+        NodeList versionNodes = DocumentUtil.getNodesByXPath(document, "/metadata/versioning/versions/version");
+        for (int i = 0; i < versionNodes.getLength(); i++) {
+            Node versionNode = versionNodes.item(i);
+            if (versionNode == null || versionNode.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+
+            Node innerNode = versionNode.getFirstChild();
+            if (innerNode == null || innerNode.getNodeType() != Node.TEXT_NODE) {
+                continue;
+            }
+
+            versions.add(innerNode.getNodeValue().replaceAll("\\s", ""));
+        }
+
+        String retVal = range.pick(versions);
+        if (retVal == null) {
+            throw new SAXException("Could not find a version matching " + range + " in metadata.");
+        }
+        return retVal;
+    }
+
     public static String getSnapshotVersion(Artifact artifact) throws IOException, XPathExpressionException, SAXException {
-        return artifact.getStrippedVersion() + "-" + fetchSnapshotVersion(DocumentUtil.getDocument(getArtifactMetadataURLs(artifact)));
+        return artifact.getStrippedVersion() + "-" + fetchSnapshotVersion(getMetadata(artifact.getCacheDir(), getCacheArtifactMetadata(artifact), getArtifactMetadataURLs(artifact), artifact.toString(), getUpdatePolicy(artifact)));
     }
 
     public static String getSnapshotVersion(ArtifactParent parent) throws IOException, XPathExpressionException, SAXException {
-        return parent.getStrippedVersion() + "-" + fetchSnapshotVersion(DocumentUtil.getDocument(getArtifactMetadataURLs(parent)));
+        return parent.getStrippedVersion() + "-" + fetchSnapshotVersion(getMetadata(parent.getCacheDir(), getCacheArtifactMetadata(parent), getArtifactMetadataURLs(parent), parent.toString(), getUpdatePolicy(parent)));
     }
 
     private static String fetchSnapshotVersion(Document document) throws XPathExpressionException, SAXException {
@@ -505,6 +726,91 @@ public class MavenUtil {
         return timestamp.replaceAll("\\s", "") + "-" + buildNumber.replaceAll("\\s", "");
     }
 
+    private static Document getMetadata(File cacheDir, File cacheFile, List<URL> urls, String coordinates, UpdatePolicy policy) throws IOException {
+        PomArchive archive = PomArchive.get(cacheDir);
+        if (HTTPUtil.isOffline()) {
+            if (!hasCacheMetadata(archive, cacheFile)) {
+                throw new MissingArtifactException(coordinates);
+            }
+            return readMetadata(archive, cacheFile);
+        }
+
+        ReentrantLock lock = metadataLocks.computeIfAbsent(cacheFile, k -> new ReentrantLock());
+        ResolutionContext.lock(lock);
+        try {
+            long now = System.currentTimeMillis();
+            Long lastAttempt = metadataAttempts.get(cacheFile);
+            boolean cached = hasCacheMetadata(archive, cacheFile);
+            boolean stale;
+            if (!cached) {
+                stale = true;
+            } else if (policy.isAlways()) {
+                stale = lastAttempt == null; // Once per run
+            } else {
+                stale = policy.isStale(Math.max(getMetadataModified(archive, cacheFile), lastAttempt != null ? lastAttempt : 0L), now);
+            }
+
+            if (stale) {
+                metadataAttempts.put(cacheFile, now);
+                try {
+                    if (archive == null) {
+                        DownloadUtil.downloadFile(cacheFile, urls);
+                        DocumentUtil.removeDocument(cacheFile);
+                    } else {
+                        String key = archive.getKey(cacheFile);
+                        archive.put(key, HTTPUtil.getBytes(urls));
+                        archive.put(key + METADATA_MODIFIED_SUFFIX, ByteBuffer.allocate(8).putLong(now).array());
+                    }
+                } catch (IOException ex) {
+                    if (!cached) {
+                        throw ex;
+                    }
+                    // Stale metadata is better than none
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return readMetadata(archive, cacheFile);
+    }
+
+    private static boolean hasCacheMetadata(PomArchive archive, File cacheFile) { return archive != null ? archive.contains(cacheFile) : DownloadUtil.hasFile(cacheFile); }
+
+    private static long getMetadataModified(PomArchive archive, File cacheFile) {
+        if (archive == null) {
+            return cacheFile.lastModified();
+        }
+        ByteBuffer modified = archive.get(archive.getKey(cacheFile) + METADATA_MODIFIED_SUFFIX);
+        return modified != null && modified.remaining() >= 8 ? modified.getLong() : 0L;
+    }
+
+    private static Document readMetadata(PomArchive archive, File cacheFile) throws IOException {
+        if (archive == null) {
+            return DocumentUtil.getDocument(cacheFile);
+        }
+        try (InputStream stream = archive.getInputStream(cacheFile)) {
+            return XMLUtil.getDocument(stream);
+        }
+    }
+
+    private static UpdatePolicy getUpdatePolicy(Artifact artifact) {
+        if (artifact.getUpdatePolicy() != null) {
+            return artifact.getUpdatePolicy();
+        }
+        return getUpdatePolicy(artifact.getRepositories());
+    }
+
+    private static UpdatePolicy getUpdatePolicy(ArtifactParent parent) { return getUpdatePolicy(parent.getRepositories()); }
+
+    private static UpdatePolicy getUpdatePolicy(Set<Repository> repositories) {
+        for (Repository repository : repositories) {
+            if (repository.getUpdatePolicy() != null) {
+                return repository.getUpdatePolicy();
+            }
+        }
+        return UpdatePolicy.DAILY;
+    }
+
     private static List<URL> getVersionMetadataURLs(Artifact artifact) throws MalformedURLException {
         List<URL> retVal = new ArrayList<>();
 
@@ -582,21 +888,160 @@ public class MavenUtil {
         return beginIndex > -1 && endIndex > beginIndex;
     }
 
+    private static PomModel getPomModel(Artifact artifact) throws IOException, XPathExpressionException { return getPomModel(getCachePom(artifact), artifact.getCacheDir(), artifact.getPomURIs(), artifact.getRepositories()); }
+
+    private static PomModel getPomModel(ArtifactParent parent) throws IOException, XPathExpressionException { return getPomModel(getCachePom(parent), parent.getCacheDir(), parent.getPomURIs(), parent.getRepositories()); }
+
+    private static PomModel getPomModel(File pomFile, File cacheDir, Set<URI> pomURIs, Set<Repository> repositories) throws IOException, XPathExpressionException {
+        PomModel retVal = modelCache.get(pomFile);
+        if (retVal != null) {
+            return retVal;
+        }
+
+        PomPrefetcher prefetcher = PomPrefetcher.get(cacheDir);
+        if (prefetcher != null) {
+            prefetcher.await(pomFile);
+        }
+
+        PomArchive archive = PomArchive.get(cacheDir);
+        if (archive == null) {
+            File file = DownloadUtil.getOrDownloadFile(pomFile, HTTPUtil.toURLs(pomURIs));
+            File modelFile = getCacheModel(file);
+            long size = file.length();
+            long modified = file.lastModified();
+
+            retVal = PomModel.read(modelFile, size, modified);
+            if (retVal == null) {
+                retVal = fetchPomModel(XMLUtil.getDocument(file));
+                try {
+                    retVal.write(modelFile, size, modified);
+                } catch (IOException ignored) { } // Cache is best-effort, we'll parse the XML again next time
+            }
+        } else {
+            String key = archive.getKey(pomFile);
+            if (!archive.contains(key)) {
+                archive.put(key, Files.readAllBytes(DownloadUtil.getOrDownloadFile(pomFile, HTTPUtil.toURLs(pomURIs)).toPath()));
+            }
+            long size = archive.get(key).remaining();
+
+            retVal = PomModel.read(archive.get(key + ".bin"), size, 0L);
+            if (retVal == null) {
+                try (InputStream stream = archive.getInputStream(key)) {
+                    retVal = fetchPomModel(XMLUtil.getDocument(stream));
+                }
+                try {
+                    archive.put(key + ".bin", retVal.toBytes(size, 0L));
+                } catch (IOException ignored) { } // Same as above, e.g. a value too long for writeUTF
+            }
+        }
+
+        PomModel cached = modelCache.putIfAbsent(pomFile, retVal);
+        if (cached != null) {
+            return cached;
+        }
+        if (prefetcher != null) {
+            prefetcher.prefetch(retVal, repositories);
+        }
+        return retVal;
+    }
+
+    private static PomModel fetchPomModel(Document document) throws XPathExpressionException, IOException {
+        try {
+            return new PomModel(
+                    fetchProperties(document),
+                    fetchParent(document),
+                    fetchDependencies(document, "/project/dependencies/dependency"),
+                    fetchDependencies(document, "/project/dependencyManagement/dependencies/dependency"),
+                    fetchRepositoryURLs(document)
+            );
+        } catch (SAXException ex) {
+            throw new IOException("Could not read pom.", ex);
+        }
+    }
+
+    public static void clearModelCache() { modelCache.clear(); }
+
+    /**
+     * Remembers that every repository answered 404 for an artifact's POM, so offline
+     * resolution can treat it the same way online resolution does.
+     *
+     * @param artifact The artifact that no longer exists
+     */
+    public static void markGone(Artifact artifact) { markGone(getCacheGoneMarker(getCachePom(artifact))); }
+
+    public static void markGone(ArtifactParent parent) { markGone(getCacheGoneMarker(getCachePom(parent))); }
+
+    private static void markGone(File marker) {
+        try {
+            DownloadUtil.createDirectory(marker.getParentFile());
+            if (!marker.exists()) {
+                Files.createFile(marker.toPath());
+            }
+        } catch (IOException ignored) { } // Only matters offline
+    }
+
+    public static boolean isMarkedGone(Artifact artifact) { return getCacheGoneMarker(getCachePom(artifact)).exists(); }
+
+    public static boolean isMarkedGone(ArtifactParent parent) { return getCacheGoneMarker(getCachePom(parent)).exists(); }
+
+    public static boolean hasCachePom(Artifact artifact) { return hasCachePom(getCachePom(artifact), artifact.getCacheDir()); }
+
+    public static boolean hasCachePom(ArtifactParent parent) { return hasCachePom(getCachePom(parent), parent.getCacheDir()); }
+
+    public static boolean hasCachePom(File pomFile, File cacheDir) {
+        PomArchive archive = PomArchive.get(cacheDir);
+        return (archive != null && archive.contains(pomFile)) || pomFile.exists();
+    }
+
     private static String encode(String raw) throws UnsupportedEncodingException { return URLEncoder.encode(raw, "UTF-8"); }
 
-    public static File getCachePom(Artifact artifact) {
+    public static File getCachePom(Artifact artifact) { return getCachePom(artifact.getCacheDir(), artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion()); }
+
+    public static File getCachePom(ArtifactParent parent) { return getCachePom(parent.getCacheDir(), parent.getGroupId(), parent.getArtifactId(), parent.getVersion()); }
+
+    public static File getCachePom(File cacheDir, String groupId, String artifactId, String version) {
+        return new File(cacheDir,
+                groupId.replace('.', File.separatorChar)
+                        + File.separator + artifactId
+                        + File.separator + version + ".pom"
+        );
+    }
+
+    public static File getCacheModel(File pomFile) { return new File(pomFile.getPath() + ".bin"); }
+
+    public static File getCacheGoneMarker(File pomFile) { return new File(pomFile.getPath() + ".gone"); }
+
+    public static File getCacheVersionMetadata(Artifact artifact) {
+        return new File(artifact.getCacheDir(),
+                artifact.getGroupId().replace('.', File.separatorChar)
+                        + File.separator + artifact.getArtifactId()
+                        + File.separator + "maven-metadata.xml"
+        );
+    }
+
+    public static File getCacheVersionMetadata(ArtifactParent parent) {
+        return new File(parent.getCacheDir(),
+                parent.getGroupId().replace('.', File.separatorChar)
+                        + File.separator + parent.getArtifactId()
+                        + File.separator + "maven-metadata.xml"
+        );
+    }
+
+    public static File getCacheArtifactMetadata(Artifact artifact) {
         return new File(artifact.getCacheDir(),
                 artifact.getGroupId().replace('.', File.separatorChar)
                         + File.separator + artifact.getArtifactId()
-                        + File.separator + artifact.getVersion() + ".pom"
+                        + File.separator + artifact.getVersion()
+                        + File.separator + "maven-metadata.xml"
         );
     }
 
-    public static File getCachePom(ArtifactParent parent) {
+    public static File getCacheArtifactMetadata(ArtifactParent parent) {
         return new File(parent.getCacheDir(),
                 parent.getGroupId().replace('.', File.separatorChar)
                         + File.separator + parent.getArtifactId()
-                        + File.separator + parent.getVersion() + ".pom"
+                        + File.separator + parent.getVersion()
+                        + File.separator + "maven-metadata.xml"
         );
     }
 }
@@ -10,42 +10,53 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 public class XMLUtil {
-    private static DocumentBuilder builder;
+    private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+    // DocumentBuilder isn't thread-safe, and POMs are parsed from many threads at once
+    private static final ThreadLocal<DocumentBuilder> builder = ThreadLocal.withInitial(XMLUtil::newBuilder);
 
     static {
-        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
         builderFactory.setIgnoringElementContentWhitespace(true);
         builderFactory.setIgnoringComments(true);
+    }
+
+    private XMLUtil() {}
 
+    private static DocumentBuilder newBuilder() {
         try {
-            builder = builderFactory.newDocumentBuilder();
+            synchronized (builderFactory) {
+                return builderFactory.newDocumentBuilder();
+            }
         } catch (ParserConfigurationException ex) {
             // This should really never happen
             throw new RuntimeException("Could not create XML document parser.", ex);
         }
     }
 
-    private XMLUtil() {}
-
     public static Document getDocument(File file) throws IOException {
+        DocumentBuilder b = builder.get();
         Document retVal;
         try {
-            retVal = builder.parse(file);
+            retVal = b.parse(file);
         } catch (SAXException ignored) {
             // I have no idea why some pom files aren't XML, but this is where we are.
-            retVal = builder.newDocument();
+            retVal = b.newDocument();
+        } finally {
+            b.reset();
         }
         retVal.normalizeDocument();
         return retVal;
     }
 
     public static Document getDocument(InputStream stream) throws IOException {
+        DocumentBuilder b = builder.get();
         Document retVal;
         try {
-            retVal = builder.parse(stream);
+            retVal = b.parse(stream);
         } catch (SAXException ignored) {
             // I have no idea why some pom files aren't XML, but this is where we are.
-            retVal = builder.newDocument();
+            retVal = b.newDocument();
+        } finally {
+            b.reset();
         }
         retVal.normalizeDocument();
         return retVal;
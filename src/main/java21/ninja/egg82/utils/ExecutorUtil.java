@@ -0,0 +1,71 @@
+package ninja.egg82.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutorUtil {
+    private ExecutorUtil() {}
+
+    /**
+     * Creates an executor for the async resolution API. Every task gets its own virtual thread,
+     * but no more than the given number run at once, so repositories aren't flooded with requests.
+     *
+     * @param maxConcurrentRequests The most tasks allowed to run at once
+     * @return A new executor, which the caller is responsible for shutting down
+     */
+    public static ExecutorService newResolutionExecutor(int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be greater than 0.");
+        }
+
+        return new LimitedExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dep-downloader-", 0).factory()), maxConcurrentRequests);
+    }
+
+    public static boolean usesVirtualThreads() { return true; }
+
+    private static class LimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private LimitedExecutor(ExecutorService delegate, int permits) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (command == null) {
+                throw new NullPointerException("command cannot be null.");
+            }
+
+            // Parking a virtual thread here is cheap, unlike holding a pool thread
+            delegate.execute(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() { delegate.shutdown(); }
+
+        @Override
+        public List<Runnable> shutdownNow() { return delegate.shutdownNow(); }
+
+        @Override
+        public boolean isShutdown() { return delegate.isShutdown(); }
+
+        @Override
+        public boolean isTerminated() { return delegate.isTerminated(); }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException { return delegate.awaitTermination(timeout, unit); }
+    }
+}
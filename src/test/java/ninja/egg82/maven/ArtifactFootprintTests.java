@@ -0,0 +1,142 @@
+package ninja.egg82.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import ninja.egg82.utils.HTTPUtil;
+import ninja.egg82.utils.MavenUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactFootprintTests {
+    @Test
+    public void testSharedState() throws Exception {
+        File cacheDir = Files.createTempDirectory("artifact-footprint").toFile();
+        boolean offline = HTTPUtil.isOffline();
+        try {
+            // Everything comes from the cache, so nothing touches the network
+            writePom(cacheDir, "app", "1.0", "<dependency><groupId>org.example</groupId><artifactId>lib</artifactId><version>1.2</version></dependency>");
+            writePom(cacheDir, "lib", "1.2", "");
+            HTTPUtil.setOffline(true);
+
+            Repository central = Repository.builder("https://repo.example.com/maven2/").addProxy("https://mirror.example.com/maven2/").build();
+            Artifact app = Artifact.builder(new String("org.example"), new String("app"), "1.0", cacheDir).addRepository(central).build();
+            Artifact lib = Artifact.builder(new String("org.example"), new String("lib"), "1.2", cacheDir).addRepository(central).build();
+
+            // Ids are interned
+            Assertions.assertSame("org.example", app.getGroupId());
+            Assertions.assertSame(app.getGroupId(), lib.getGroupId());
+            Assertions.assertSame("app", app.getArtifactId());
+
+            // Repository sets are shared between artifacts with the same repositories
+            Assertions.assertSame(getRepositories(app), getRepositories(lib));
+            List<Artifact> dependencies = app.getDependencies();
+            Assertions.assertEquals(1, dependencies.size());
+            Assertions.assertEquals(lib, dependencies.get(0));
+            Assertions.assertSame(getRepositories(app), getRepositories(dependencies.get(0)));
+
+            // Scoped views hold no graph of their own
+            Artifact view = Artifact.builder("org.example", "app", "1.0", cacheDir, Scope.RUNTIME).addRepository(central).build();
+            Assertions.assertEquals(Scope.RUNTIME, view.getScope());
+            Assertions.assertSame(app.getDependencies(), view.getDependencies());
+            Assertions.assertSame(getRepositories(app), getRepositories(view));
+
+            // Candidate URIs are built on request, each repository's proxies before the repository itself
+            List<URI> expected = Arrays.asList(
+                    new URI("https://mirror.example.com/maven2/org/example/app/1.0/app-1.0.jar"),
+                    new URI("https://repo.example.com/maven2/org/example/app/1.0/app-1.0.jar")
+            );
+            Assertions.assertEquals(expected, new ArrayList<>(app.getJarURIs()));
+            Assertions.assertEquals(expected, new ArrayList<>(view.getJarURIs()));
+            Assertions.assertNotSame(app.getJarURIs(), app.getJarURIs());
+        } finally {
+            HTTPUtil.setOffline(offline);
+            delete(cacheDir);
+        }
+    }
+
+    @Test
+    public void testRepositoryPolicies() throws Exception {
+        File cacheDir = Files.createTempDirectory("artifact-footprint").toFile();
+        boolean offline = HTTPUtil.isOffline();
+        try {
+            writePom(cacheDir, "app", "1.0", "");
+            writePom(cacheDir, "lib", "1.2", "");
+            HTTPUtil.setOffline(true);
+
+            Artifact app = Artifact.builder("org.example", "app", "1.0", cacheDir).addRepository(Repository.builder("https://repo.example.com/maven2/").build()).build();
+            Artifact lib = Artifact.builder("org.example", "lib", "1.2", cacheDir).addRepository(Repository.builder("https://repo.example.com/maven2/").updatePolicy(UpdatePolicy.NEVER).build()).build();
+
+            // Same repository, different policy, so the sets can't be shared
+            Assertions.assertNotSame(getRepositories(app), getRepositories(lib));
+            Assertions.assertNull(app.getRepositories().iterator().next().getUpdatePolicy());
+            Assertions.assertSame(UpdatePolicy.NEVER, lib.getRepositories().iterator().next().getUpdatePolicy());
+        } finally {
+            HTTPUtil.setOffline(offline);
+            delete(cacheDir);
+        }
+    }
+
+    @Test
+    public void testMovingVersionSharesCore() throws Exception {
+        File cacheDir = Files.createTempDirectory("artifact-footprint").toFile();
+        boolean offline = HTTPUtil.isOffline();
+        try {
+            writePom(cacheDir, "lib", "1.1", "");
+            writePom(cacheDir, "lib", "1.2", "");
+            File metadata = new File(cacheDir, "org" + File.separator + "example" + File.separator + "lib" + File.separator + "maven-metadata.xml");
+            Files.write(metadata.toPath(), ("<metadata><groupId>org.example</groupId><artifactId>lib</artifactId><versioning>"
+                    + "<versions><version>1.1</version><version>1.2</version></versions></versioning></metadata>").getBytes(StandardCharsets.UTF_8));
+            HTTPUtil.setOffline(true);
+
+            Repository central = Repository.builder("https://repo.example.com/maven2/").build();
+            Artifact first = Artifact.builder("org.example", "lib", "[1.0,2.0)", cacheDir).addRepository(central).build();
+            Assertions.assertEquals("1.2", first.getVersion());
+
+            // The core is cached under the requested range, not the version it resolved to
+            Artifact second = Artifact.builder("org.example", "lib", "[1.0,2.0)", cacheDir).addRepository(central).build();
+            Assertions.assertSame(first, second);
+            Artifact view = Artifact.builder("org.example", "lib", "[1.0,2.0)", cacheDir, Scope.RUNTIME).addRepository(central).build();
+            Assertions.assertSame(first.getDependencies(), view.getDependencies());
+        } finally {
+            HTTPUtil.setOffline(offline);
+            MavenUtil.clearRangeCache();
+            delete(cacheDir);
+        }
+    }
+
+    private static Object getRepositories(Artifact artifact) throws ReflectiveOperationException {
+        Field field = Artifact.class.getDeclaredField("repositories");
+        field.setAccessible(true);
+        return field.get(artifact);
+    }
+
+    private static void writePom(File cacheDir, String artifactId, String version, String dependencies) throws IOException {
+        File pom = new File(cacheDir, "org" + File.separator + "example" + File.separator + artifactId + File.separator + version + ".pom");
+        Files.createDirectories(pom.getParentFile().toPath());
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.example</groupId>\n"
+                + "  <artifactId>" + artifactId + "</artifactId>\n"
+                + "  <version>" + version + "</version>\n"
+                + "  <dependencies>" + dependencies + "</dependencies>\n"
+                + "</project>\n";
+        Files.write(pom.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ninja.egg82.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Stream;
+import ninja.egg82.utils.HTTPUtil;
+import ninja.egg82.utils.MavenUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DependencyCacheTests {
+    @Test
+    public void testFilteredListsCached() throws Exception {
+        File cacheDir = Files.createTempDirectory("dependency-cache").toFile();
+        boolean offline = HTTPUtil.isOffline();
+        try {
+            File pom = writePom(cacheDir, "app", "1.0", "<dependency><groupId>org.example</groupId><artifactId>lib</artifactId><version>1.2</version></dependency>"
+                    + "<dependency><groupId>org.example</groupId><artifactId>other</artifactId><version>1.0</version></dependency>"
+                    + "<dependency><groupId>org.example</groupId><artifactId>tests</artifactId><version>1.0</version><scope>test</scope></dependency>");
+            writePom(cacheDir, "lib", "1.2", "");
+            writePom(cacheDir, "other", "1.0", "");
+            HTTPUtil.setOffline(true);
+
+            Repository central = Repository.builder("https://repo.example.com/maven2/").build();
+            Artifact app = Artifact.builder("org.example", "app", "1.0", cacheDir).addRepository(central).build();
+            Artifact view = Artifact.builder("org.example", "app", "1.0", cacheDir, Scope.RUNTIME).addRepository(central).addExclusion(new Exclusion("org.example", "other")).build();
+
+            List<Artifact> dependencies = view.getDependencies(EnumSet.of(Scope.COMPILE));
+            Assertions.assertEquals(1, dependencies.size());
+            Assertions.assertEquals("lib", dependencies.get(0).getArtifactId());
+
+            // Later calls, from this view or another with the same exclusions, don't go back to the POM
+            Files.delete(pom.toPath());
+            MavenUtil.clearModelCache();
+            Assertions.assertEquals(dependencies, view.getDependencies(EnumSet.of(Scope.COMPILE)));
+            Artifact other = Artifact.builder("org.example", "app", "1.0", cacheDir, Scope.TEST).addRepository(central).addExclusion(new Exclusion("org.example", "other")).build();
+            Assertions.assertEquals(dependencies, other.getDependencies(EnumSet.of(Scope.COMPILE)));
+            Assertions.assertNotSame(view.getDependencies(EnumSet.of(Scope.COMPILE)), view.getDependencies(EnumSet.of(Scope.COMPILE)));
+
+            // Different filters are separate entries
+            Assertions.assertThrows(IOException.class, () -> app.getDependencies(EnumSet.of(Scope.COMPILE)));
+        } finally {
+            HTTPUtil.setOffline(offline);
+            MavenUtil.clearModelCache();
+            delete(cacheDir);
+        }
+    }
+
+    @Test
+    public void testGoneViews() throws Exception {
+        File cacheDir = Files.createTempDirectory("dependency-cache").toFile();
+        boolean offline = HTTPUtil.isOffline();
+        try {
+            File marker = MavenUtil.getCacheGoneMarker(MavenUtil.getCachePom(cacheDir, "org.example", "gone", "1.0"));
+            Files.createDirectories(marker.getParentFile().toPath());
+            Files.createFile(marker.toPath());
+            HTTPUtil.setOffline(true);
+
+            Repository central = Repository.builder("https://repo.example.com/maven2/").build();
+            Artifact gone = Artifact.builder("org.example", "gone", "1.0", cacheDir).addRepository(central).build();
+            Assertions.assertTrue(gone.getDependencies().isEmpty());
+
+            // A view with its own exclusions has no POM to read either
+            Artifact view = Artifact.builder("org.example", "gone", "1.0", cacheDir, Scope.RUNTIME).addRepository(central).addExclusion(new Exclusion("org.example", "lib")).build();
+            Assertions.assertTrue(view.getDependencies().isEmpty());
+            Assertions.assertTrue(view.getDependencies(EnumSet.of(Scope.COMPILE)).isEmpty());
+        } finally {
+            HTTPUtil.setOffline(offline);
+            delete(cacheDir);
+        }
+    }
+
+    private static File writePom(File cacheDir, String artifactId, String version, String dependencies) throws IOException {
+        File retVal = MavenUtil.getCachePom(cacheDir, "org.example", artifactId, version);
+        Files.createDirectories(retVal.getParentFile().toPath());
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>org.example</groupId>\n"
+                + "  <artifactId>" + artifactId + "</artifactId>\n"
+                + "  <version>" + version + "</version>\n"
+                + "  <dependencies>" + dependencies + "</dependencies>\n"
+                + "</project>\n";
+        Files.write(retVal.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return retVal;
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ninja.egg82.maven;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import ninja.egg82.utils.HTTPUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ResolutionContextTests {
+    @Test
+    public void testTimeouts() {
+        Assertions.assertDoesNotThrow(() -> {
+            Assertions.assertEquals(5000, ResolutionContext.getTimeout(5000));
+
+            ResolutionContext context = ResolutionContext.builder().deadline(2L, TimeUnit.SECONDS).build();
+            try (ResolutionContext.Handle ignored = context.enter()) {
+                Assertions.assertSame(context, ResolutionContext.current());
+                int timeout = ResolutionContext.getTimeout(5000);
+                Assertions.assertTrue(timeout > 0 && timeout <= 2000);
+                Assertions.assertEquals(100, ResolutionContext.getTimeout(100));
+            }
+            Assertions.assertNull(ResolutionContext.current());
+        });
+    }
+
+    @Test
+    public void testCancel() {
+        ResolutionContext context = ResolutionContext.builder().build();
+        Assertions.assertFalse(context.hasDeadline());
+        Assertions.assertDoesNotThrow(context::check);
+
+        context.cancel();
+        Assertions.assertTrue(context.isCancelled());
+        Assertions.assertThrows(ResolutionCancelledException.class, context::check);
+        try (ResolutionContext.Handle ignored = context.enter()) {
+            // Fails before any connection is opened
+            Assertions.assertThrows(ResolutionCancelledException.class, () -> HTTPUtil.remoteExists(Collections.singletonList(new URL("http://127.0.0.1:1/"))));
+        }
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        ResolutionContext context = ResolutionContext.builder().deadline(10L, TimeUnit.MILLISECONDS).build();
+        Thread.sleep(20L);
+        Assertions.assertTrue(context.isExpired());
+        Assertions.assertEquals(0L, context.getRemainingMillis());
+        try (ResolutionContext.Handle ignored = context.enter()) {
+            Assertions.assertThrows(ResolutionCancelledException.class, () -> ResolutionContext.getTimeout(5000));
+        }
+    }
+
+    @Test
+    public void testLock() throws InterruptedException {
+        ReentrantLock lock = new ReentrantLock();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        held.await();
+
+        ResolutionContext context = ResolutionContext.builder().deadline(200L, TimeUnit.MILLISECONDS).build();
+        ResolutionContext.Handle handle = context.enter();
+        try {
+            // Gives up at the deadline instead of waiting for the holder
+            Assertions.assertThrows(ResolutionCancelledException.class, () -> ResolutionContext.lock(lock));
+            Assertions.assertFalse(lock.isHeldByCurrentThread());
+        } finally {
+            handle.close();
+            release.countDown();
+            holder.join();
+        }
+
+        Assertions.assertDoesNotThrow(() -> ResolutionContext.lock(lock));
+        Assertions.assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+    }
+}
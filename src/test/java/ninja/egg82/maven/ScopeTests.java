@@ -0,0 +1,23 @@
+package ninja.egg82.maven;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScopeTests {
+    @Test
+    public void testPropagate() {
+        Assertions.assertSame(Scope.COMPILE, Scope.COMPILE.propagate(Scope.COMPILE));
+        Assertions.assertSame(Scope.RUNTIME, Scope.COMPILE.propagate(Scope.RUNTIME));
+        Assertions.assertSame(Scope.PROVIDED, Scope.PROVIDED.propagate(Scope.COMPILE));
+        Assertions.assertSame(Scope.PROVIDED, Scope.PROVIDED.propagate(Scope.RUNTIME));
+        Assertions.assertSame(Scope.RUNTIME, Scope.RUNTIME.propagate(Scope.COMPILE));
+        Assertions.assertSame(Scope.TEST, Scope.TEST.propagate(Scope.RUNTIME));
+
+        for (Scope scope : Scope.values()) {
+            Assertions.assertNull(scope.propagate(Scope.TEST));
+            Assertions.assertNull(scope.propagate(Scope.PROVIDED));
+            Assertions.assertNull(scope.propagate(Scope.SYSTEM));
+        }
+        Assertions.assertNull(Scope.SYSTEM.propagate(Scope.COMPILE));
+    }
+}
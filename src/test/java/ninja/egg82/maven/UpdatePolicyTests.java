@@ -0,0 +1,32 @@
+package ninja.egg82.maven;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UpdatePolicyTests {
+    @Test
+    public void testFromName() {
+        Assertions.assertSame(UpdatePolicy.ALWAYS, UpdatePolicy.fromName("always"));
+        Assertions.assertSame(UpdatePolicy.NEVER, UpdatePolicy.fromName("NEVER"));
+        Assertions.assertSame(UpdatePolicy.DAILY, UpdatePolicy.fromName("daily"));
+        Assertions.assertSame(UpdatePolicy.DAILY, UpdatePolicy.fromName(null));
+        Assertions.assertSame(UpdatePolicy.DAILY, UpdatePolicy.fromName("interval:abc"));
+        Assertions.assertEquals(UpdatePolicy.interval(30L), UpdatePolicy.fromName("interval:30"));
+    }
+
+    @Test
+    public void testIsStale() {
+        long now = System.currentTimeMillis();
+
+        Assertions.assertTrue(UpdatePolicy.ALWAYS.isStale(now, now));
+        Assertions.assertFalse(UpdatePolicy.NEVER.isStale(0L, now));
+
+        UpdatePolicy interval = UpdatePolicy.interval(10L);
+        Assertions.assertFalse(interval.isStale(now - TimeUnit.MINUTES.toMillis(5L), now));
+        Assertions.assertTrue(interval.isStale(now - TimeUnit.MINUTES.toMillis(15L), now));
+
+        Assertions.assertFalse(UpdatePolicy.DAILY.isStale(now, now));
+        Assertions.assertTrue(UpdatePolicy.DAILY.isStale(now - TimeUnit.DAYS.toMillis(2L), now));
+    }
+}
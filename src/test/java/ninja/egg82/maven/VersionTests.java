@@ -0,0 +1,59 @@
+package ninja.egg82.maven;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class VersionTests {
+    @Test
+    public void testCompare() {
+        String[] ordered = { "1-alpha1", "1-alpha2", "1-beta", "1-m1", "1-rc1", "1-SNAPSHOT", "1", "1-sp1", "1.0.1", "1.1", "1.10", "2.0-rc1", "2" };
+        for (int i = 0; i < ordered.length - 1; i++) {
+            Assertions.assertTrue(Version.parse(ordered[i]).compareTo(Version.parse(ordered[i + 1])) < 0, ordered[i] + " < " + ordered[i + 1]);
+        }
+
+        Assertions.assertEquals(Version.parse("1"), Version.parse("1.0.0"));
+        Assertions.assertEquals(Version.parse("1.0-ga"), Version.parse("1-final"));
+        Assertions.assertEquals(Version.parse("1-cr1"), Version.parse("1-rc1"));
+        Assertions.assertEquals(Version.parse("1-a1"), Version.parse("1-alpha-1"));
+        Assertions.assertEquals(0, Version.parse("2.01").compareTo(Version.parse("2.1")));
+        Assertions.assertTrue(Version.parse("20190101120000").compareTo(Version.parse("9")) > 0);
+
+        // Zeros before a qualifier are trimmed too
+        Assertions.assertEquals(Version.parse("1-alpha1"), Version.parse("1.0-alpha1"));
+        Assertions.assertEquals(Version.parse("1.0.0-beta"), Version.parse("1-beta"));
+        Assertions.assertTrue(Version.parse("1.0.0-beta").compareTo(Version.parse("1.0-beta2")) < 0);
+    }
+
+    @Test
+    public void testRange() {
+        VersionRange range = VersionRange.parse("[1.2,2.0)");
+        Assertions.assertTrue(range.contains(Version.parse("1.2")));
+        Assertions.assertTrue(range.contains(Version.parse("1.9.9")));
+        Assertions.assertFalse(range.contains(Version.parse("2.0")));
+        Assertions.assertFalse(range.contains(Version.parse("1.1")));
+        Assertions.assertFalse(VersionRange.parse("[1.0-beta2,)").contains(Version.parse("1.0.0-beta")));
+
+        Assertions.assertTrue(VersionRange.parse("(,1.0]").contains(Version.parse("0.5")));
+        Assertions.assertFalse(VersionRange.parse("(1.0,)").contains(Version.parse("1.0")));
+        Assertions.assertTrue(VersionRange.parse("[1.5]").contains(Version.parse("1.5.0")));
+        Assertions.assertTrue(VersionRange.parse("[1,2),[3,4)").contains(Version.parse("3.5")));
+        Assertions.assertFalse(VersionRange.parse("[1,2),[3,4)").contains(Version.parse("2.5")));
+
+        Assertions.assertTrue(VersionRange.isRange("[1.0,)"));
+        Assertions.assertFalse(VersionRange.isRange("1.0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("[1.0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("(1.0)"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> VersionRange.parse("[2.0,1.0]"));
+    }
+
+    @Test
+    public void testPick() {
+        List<String> versions = Arrays.asList("1.0", "1.2", "1.10", "2.0-SNAPSHOT", "2.0", "2.1");
+        Assertions.assertEquals("1.10", VersionRange.parse("[1.0,2.0)").pick(versions));
+        Assertions.assertEquals("2.1", VersionRange.parse("[1.0,)").pick(versions));
+        Assertions.assertNull(VersionRange.parse("[3.0,)").pick(versions));
+        Assertions.assertEquals("1.0-beta2", VersionRange.parse("[1.0-beta2,1.0)").pick(Arrays.asList("1.0.0-beta", "1.0-beta2")));
+    }
+}
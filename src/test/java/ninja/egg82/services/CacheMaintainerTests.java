@@ -0,0 +1,101 @@
+package ninja.egg82.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CacheMaintainerTests {
+    @Test
+    public void testEvictsOldestToBudget() throws IOException {
+        File dir = Files.createTempDirectory("cache-maintainer").toFile();
+        try {
+            File oldest = create(dir, "a/oldest.pom", 100, 1000L);
+            File older = create(dir, "b/older.jar", 100, 2000L);
+            File newest = create(dir, "c/newest.pom", 100, 3000L);
+
+            CacheMaintainer maintainer = CacheMaintainer.builder(dir, 150L).build();
+            try {
+                Assertions.assertEquals(200L, maintainer.runOnce());
+                Assertions.assertFalse(oldest.exists());
+                Assertions.assertFalse(older.exists());
+                Assertions.assertTrue(newest.exists());
+                Assertions.assertFalse(new File(dir, "a").exists()); // Empty parents go too
+
+                // Already under budget
+                Assertions.assertEquals(0L, maintainer.runOnce());
+                Assertions.assertTrue(newest.exists());
+            } finally {
+                maintainer.stop();
+            }
+            Assertions.assertTrue(new File(dir, ".access").isFile());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testKeepsProtectedAndAccessed() throws IOException {
+        File dir = Files.createTempDirectory("cache-maintainer").toFile();
+        try {
+            File pinned = create(dir, "pinned.pom", 100, 1000L);
+            File accessed = create(dir, "accessed.jar", 100, 2000L);
+            File evicted = create(dir, "evicted.pom", 100, 3000L);
+
+            CacheMaintainer maintainer = CacheMaintainer.builder(dir, 0L).build();
+            try {
+                maintainer.protect(pinned);
+                CacheMaintainer.recordAccess(accessed);
+
+                Assertions.assertEquals(100L, maintainer.runOnce());
+                Assertions.assertTrue(pinned.exists());
+                Assertions.assertTrue(accessed.exists());
+                Assertions.assertFalse(evicted.exists());
+            } finally {
+                maintainer.stop();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testBatchSize() throws IOException {
+        File dir = Files.createTempDirectory("cache-maintainer").toFile();
+        try {
+            for (int i = 0; i < 5; i++) {
+                create(dir, i + ".pom", 10, 1000L + i);
+            }
+
+            CacheMaintainer maintainer = CacheMaintainer.builder(dir, 0L).batchSize(2).build();
+            try {
+                Assertions.assertEquals(20L, maintainer.runOnce());
+                Assertions.assertFalse(new File(dir, "0.pom").exists());
+                Assertions.assertFalse(new File(dir, "1.pom").exists());
+                Assertions.assertTrue(new File(dir, "2.pom").exists());
+            } finally {
+                maintainer.stop();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static File create(File dir, String name, int size, long modified) throws IOException {
+        File retVal = new File(dir, name);
+        Files.createDirectories(retVal.getParentFile().toPath());
+        Files.write(retVal.toPath(), new byte[size]);
+        Assertions.assertTrue(retVal.setLastModified(modified));
+        return retVal;
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ninja.egg82.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ExclusionMatcherTests {
+    private static final List<String> NAMES = Arrays.asList(
+            "", "Foo", "com", "com.foo", "com.foo.Bar", "com.foo.Bar$Inner", "com.foobar.Baz", "com.foo.bar.Baz",
+            "comXfoo.Bar", "org.foo.Bar", "java.lang.String", "ninja.egg82.maven.Artifact", "a-b.C", "x$y"
+    );
+
+    @Test
+    public void testMatchesRegex() {
+        List<List<String>> cases = Arrays.asList(
+                Collections.singletonList(".*"),
+                Collections.singletonList("^.*$"),
+                Collections.singletonList(""),
+                Arrays.asList("com\\.foo\\..*", "java.lang.*"),
+                Arrays.asList("^com.foo.*", "org\\.foo\\.Bar$"),
+                Collections.singletonList("com\\.foo\\.Bar"),
+                Collections.singletonList("com\\.foo\\.Bar\\$Inner"),
+                Collections.singletonList("a-b\\..*"),
+                Arrays.asList("com\\.foo\\.Bar", ".*\\.Baz"),
+                Arrays.asList("ninja\\.egg82\\.(maven|utils)\\..*", "(?i)FOO"),
+                Arrays.asList("x\\$y", "[a-c]om\\..*")
+        );
+
+        for (List<String> regexes : cases) {
+            List<Pattern> patterns = new ArrayList<>();
+            for (String regex : regexes) {
+                patterns.add(Pattern.compile(regex, regex.startsWith("(?i)") ? Pattern.CASE_INSENSITIVE : 0));
+            }
+            ExclusionMatcher matcher = new ExclusionMatcher(patterns);
+
+            // Twice, so cached decisions are checked too
+            for (int i = 0; i < 2; i++) {
+                for (String name : NAMES) {
+                    boolean expected = false;
+                    for (Pattern pattern : patterns) {
+                        if (pattern.matcher(name).matches()) {
+                            expected = true;
+                            break;
+                        }
+                    }
+                    Assertions.assertEquals(expected, matcher.isExcluded(name), regexes + " against \"" + name + "\"");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        ExclusionMatcher matcher = new ExclusionMatcher(Collections.emptyList());
+        Assertions.assertFalse(matcher.isExcluded("com.foo.Bar"));
+        Assertions.assertFalse(matcher.isExcluded(null));
+    }
+}
@@ -0,0 +1,126 @@
+package ninja.egg82.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MappedURLClassLoaderTests {
+    private static final String RESOURCE = "mapped-loader-test.txt";
+
+    @Test
+    public void testSameAsProxied() throws Exception {
+        File classes = new File(ProxiedURLClassLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File dir = Files.createTempDirectory("mapped-loader").toFile();
+        try {
+            // Two jars, so lookups have to walk the class path in order
+            File first = new File(dir, "first.jar");
+            File second = new File(dir, "second.jar");
+            List<String> classNames = new ArrayList<>();
+            long classBytes = writeJar(classes, "ninja/egg82/maven/", first, "first", classNames);
+            classBytes += writeJar(classes, "ninja/egg82/utils/", second, "second", classNames);
+            List<URL> urls = Arrays.asList(first.toURI().toURL(), second.toURI().toURL());
+
+            try (ProxiedURLClassLoader proxied = new ProxiedURLClassLoader(getClass().getClassLoader()); MappedURLClassLoader mapped = new MappedURLClassLoader(getClass().getClassLoader())) {
+                proxied.addURLs(urls);
+                mapped.addURLs(urls);
+                Assertions.assertTrue(mapped.isMapped());
+
+                ClassLoadingStats proxiedStats = proxied.enableStats();
+                ClassLoadingStats mappedStats = mapped.enableStats();
+                for (String name : classNames) {
+                    Class<?> fromProxied = Class.forName(name, false, proxied);
+                    Class<?> fromMapped = Class.forName(name, false, mapped);
+                    Assertions.assertSame(proxied, fromProxied.getClassLoader(), name);
+                    Assertions.assertSame(mapped, fromMapped.getClassLoader(), name);
+                    Assertions.assertEquals(fromProxied.getPackage().getName(), fromMapped.getPackage().getName(), name);
+                    Assertions.assertEquals(
+                            fromProxied.getProtectionDomain().getCodeSource().getLocation(),
+                            fromMapped.getProtectionDomain().getCodeSource().getLocation(),
+                            name
+                    );
+                }
+                Assertions.assertEquals(classBytes, proxiedStats.getBytesDefined());
+                Assertions.assertEquals(classBytes, mappedStats.getBytesDefined());
+
+                // Resources are served the regular way, first jar wins
+                Assertions.assertEquals(proxied.getResource(RESOURCE), mapped.getResource(RESOURCE));
+                Assertions.assertEquals("first", read(mapped.getResourceAsStream(RESOURCE)));
+                Assertions.assertEquals(Collections.list(proxied.getResources(RESOURCE)), Collections.list(mapped.getResources(RESOURCE)));
+                Assertions.assertEquals(2, Collections.list(mapped.getResources(RESOURCE)).size());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testDirectoryFallback() throws Exception {
+        File classes = new File(ProxiedURLClassLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (MappedURLClassLoader mapped = new MappedURLClassLoader(getClass().getClassLoader())) {
+            mapped.addURL(classes.toURI().toURL());
+            Assertions.assertFalse(mapped.isMapped());
+
+            Class<?> clazz = Class.forName(ClassPathIndex.class.getName(), false, mapped);
+            Assertions.assertSame(mapped, clazz.getClassLoader());
+        }
+    }
+
+    private static long writeJar(File classes, String prefix, File jar, String resource, List<String> classNames) throws IOException {
+        long retVal = 0L;
+        Path root = classes.toPath();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar)); Stream<Path> files = Files.walk(root.resolve(prefix))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isDirectory(file)) {
+                    continue;
+                }
+                String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                out.putNextEntry(new JarEntry(name));
+                Files.copy(file, out);
+                out.closeEntry();
+                if (name.endsWith(".class")) {
+                    classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                    retVal += Files.size(file);
+                }
+            }
+
+            out.putNextEntry(new JarEntry(RESOURCE));
+            out.write(resource.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return retVal;
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ninja.egg82.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PomArchiveTests {
+    @Test
+    public void testCompact() throws IOException {
+        File dir = Files.createTempDirectory("pom-archive").toFile();
+        try {
+            try (PomArchive archive = PomArchive.open(dir)) {
+                archive.put("a.pom", bytes("first"));
+                archive.put("b.pom", bytes("other"));
+                Assertions.assertEquals("first", string(archive.get("a.pom"))); // Maps the archive
+                archive.put("a.pom", bytes("second"));
+                Assertions.assertTrue(archive.getWastedBytes() > 0L);
+
+                archive.compact();
+                Assertions.assertEquals(0L, archive.getWastedBytes());
+                Assertions.assertEquals("second", string(archive.get("a.pom")));
+                Assertions.assertEquals("other", string(archive.get("b.pom")));
+
+                archive.put("c.pom", bytes("after"));
+            }
+
+            try (PomArchive archive = PomArchive.open(dir)) {
+                Assertions.assertEquals(3, archive.getKeys().size());
+                Assertions.assertEquals("second", string(archive.get("a.pom")));
+                Assertions.assertEquals("after", string(archive.get("c.pom")));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testTruncatedTail() throws IOException {
+        File dir = Files.createTempDirectory("pom-archive").toFile();
+        try {
+            File file;
+            try (PomArchive archive = PomArchive.open(dir)) {
+                archive.put("a.pom", bytes("kept"));
+                archive.put("b.pom", bytes("cut off"));
+                file = archive.getFile();
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 2L);
+            }
+
+            try (PomArchive archive = PomArchive.open(dir)) {
+                Assertions.assertEquals("kept", string(archive.get("a.pom")));
+                Assertions.assertFalse(archive.contains("b.pom"));
+                Assertions.assertEquals(0L, archive.getWastedBytes());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static byte[] bytes(String value) { return value.getBytes(StandardCharsets.UTF_8); }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] retVal = new byte[buffer.remaining()];
+        buffer.get(retVal);
+        return new String(retVal, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ninja.egg82.services;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ProxiedURLClassLoaderTests {
+    @Test
+    public void testFindMissDoesNotHideDelegation() throws Exception {
+        try (ProxiedURLClassLoader loader = new ProxiedURLClassLoader(ClassLoader.getSystemClassLoader())) {
+            // The system loader's own URLs don't hold JDK classes, so findClass misses
+            Assertions.assertThrows(ClassNotFoundException.class, () -> loader.findClass("java.lang.String"));
+            // Delegation still finds it
+            Assertions.assertSame(String.class, loader.loadClass("java.lang.String"));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ninja.egg82.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class ExecutorUtilTests {
+    @Test
+    public void testLimit() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ExecutorUtil.newResolutionExecutor(0));
+        Assertions.assertDoesNotThrow(() -> checkLimit(ExecutorUtil.newResolutionExecutor(3), 3, false));
+    }
+
+    @Test
+    public void testVirtualLimit() throws Exception {
+        // Class directories ignore META-INF/versions, so load the Java 21 variant from a multi-release jar
+        File classes = new File(ExecutorUtil.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned = new File(classes, "META-INF/versions/21/ninja/egg82/utils/ExecutorUtil.class");
+        Assumptions.assumeTrue(getJavaVersion() >= 21 && versioned.exists(), "Needs Java 21 and the java21 build profile");
+
+        File jar = File.createTempFile("dep-downloader-", ".jar");
+        try {
+            writeMultiReleaseJar(classes, jar);
+            try (URLClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, null)) {
+                Class<?> util = loader.loadClass(ExecutorUtil.class.getName());
+                Assertions.assertTrue((Boolean) util.getMethod("usesVirtualThreads").invoke(null));
+                checkLimit((ExecutorService) util.getMethod("newResolutionExecutor", int.class).invoke(null, 3), 3, true);
+            }
+        } finally {
+            Files.deleteIfExists(jar.toPath());
+        }
+    }
+
+    private static void checkLimit(ExecutorService executor, int limit, boolean virtual) throws Exception {
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger max = new AtomicInteger(0);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(AsyncUtil.supplyAsync(() -> {
+                max.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(10L);
+                running.decrementAndGet();
+                return isVirtual(Thread.currentThread());
+            }, executor));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            Assertions.assertEquals(virtual, future.join());
+        }
+
+        Assertions.assertTrue(max.get() <= limit);
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        if (getJavaVersion() < 21) {
+            return false;
+        }
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    private static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    private static void writeMultiReleaseJar(File classes, File jar) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Multi-Release"), "true");
+
+        Path root = classes.toPath();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest); Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isDirectory(file)) {
+                    continue;
+                }
+                out.putNextEntry(new JarEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                Files.copy(file, out);
+                out.closeEntry();
+            }
+        }
+    }
+}